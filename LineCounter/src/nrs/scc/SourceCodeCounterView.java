@@ -18,7 +18,9 @@
 
 package nrs.scc;
 
+import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.GridLayout;
 import java.awt.Point;
 import java.awt.event.KeyEvent;
 import java.io.File;
@@ -40,8 +42,12 @@ import java.util.regex.Pattern;
 import javax.swing.AbstractButton;
 import javax.swing.JCheckBox;
 import javax.swing.JFileChooser;
+import javax.swing.JLabel;
 import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
 import javax.swing.JTable;
+import javax.swing.JTextArea;
 import javax.swing.ToolTipManager;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
@@ -60,6 +66,7 @@ import nrs.scc.tab2.CounterTreeModel;
 import nrs.scc.tab2.ValidPatternDocumentListener;
 import nrs.scc.tab3.CSVFileFilter;
 import nrs.scc.tab3.FileComparator;
+import nrs.scc.tab3.SummaryDetails;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.event.ListSelectionEvent;
@@ -96,6 +103,7 @@ import javax.swing.event.ListSelectionListener;
 import nrs.scc.tab1.CentreTableHeaderRenderer;
 import nrs.scc.tab1.FileSelectionIOHandler;
 import nrs.scc.tab1.FileTypesListRenderer;
+import nrs.scc.tab1.IgnoreRules;
 import nrs.scc.tab1.SCCPFileFilter;
 import nrs.scc.tab2.FileTypesSAXParser;
 import nrs.scc.tab2.CounterTreeCellRenderer;
@@ -129,12 +137,35 @@ public class SourceCodeCounterView extends FrameView
 	private FileSelectionTableModel fsTM;
 	private String characterSet = Charset.defaultCharset().name();
 	private int fileCountThreads = 1;
+	private int filesReadAtOnce = DEFAULT_FILES_READ_AT_ONCE;
+	/** files of at least this many MB are split into segments counted at the same time; 0 to never split */
+	private int splitFilesOver = DEFAULT_SPLIT_FILES_OVER;
+	/** milliseconds between refreshes of the summary table while counting; 0 to only show it at the end */
+	private int liveTotalsInterval = DEFAULT_LIVE_TOTALS_INTERVAL;
+	/** files and directories left out when adding a directory */
+	private IgnoreRules ignoreRules = new IgnoreRules(new ArrayList<String>(), new ArrayList<String>(), false);
 	private String unknownFilesFileType;
 
 	private static final String DEFAULT_FILE_TYPES = "/nrs/scc/tab2/filetypes.xml";
 	private static final String CHAR_SET = "charSet";
 	private static final String THREADS = "threads";
 	private static final String CBL = "countBlankLines";
+	private static final String SKIP_DUPLICATES = "skipDuplicates";
+	private static final String LARGEST_FIRST = "largestFirst";
+	private static final String SLOW_DRIVES = "slowDrives";
+	private static final String FILES_READ_AT_ONCE = "filesReadAtOnce";
+	private static final int DEFAULT_FILES_READ_AT_ONCE = 32;
+	private static final int MAX_FILES_READ_AT_ONCE = 256;
+	private static final String SPLIT_FILES_OVER = "splitFilesOver";
+	private static final int DEFAULT_SPLIT_FILES_OVER = 4;
+	private static final int MAX_SPLIT_FILES_OVER = 2047;
+	private static final String LIVE_TOTALS_INTERVAL = "liveTotalsInterval";
+	private static final int DEFAULT_LIVE_TOTALS_INTERVAL = 1000;
+	private static final int MIN_LIVE_TOTALS_INTERVAL = 100;
+	private static final int MAX_LIVE_TOTALS_INTERVAL = 60000;
+	private static final String INCLUDE_GLOBS = "includeGlobs";
+	private static final String EXCLUDE_GLOBS = "excludeGlobs";
+	private static final String GIT_IGNORE = "gitIgnore";
 	private static final String UTF8 = "UTF-8";
 	private static final String SCCP = "SCCProfile.sccp";
 	private static final String SCC_FILE_SELECTION = "SCC-FileSelection.txt";
@@ -298,7 +329,8 @@ public class SourceCodeCounterView extends FrameView
 		
 		// tab 3
 		String[] resultsColNames = {resourceMap.getString("file.name"), resourceMap.getString("file.type"), resourceMap.getString("total.lines"),
-			resourceMap.getString("blank.lines"), resourceMap.getString("counted.lines"), resourceMap.getString("rem.lines")};
+			resourceMap.getString("blank.lines"), resourceMap.getString("counted.lines"), resourceMap.getString("rem.lines"),
+			resourceMap.getString("duplicate.of"), resourceMap.getString("skipped.as")};
 		resultsTM = new ResultsTableModel(resultsColNames);
 		resultsTable.setModel(resultsTM);
 		resultsTable.setTableHeader(
@@ -456,6 +488,10 @@ public class SourceCodeCounterView extends FrameView
 							eightThreadMI.setSelected(true);
 							break;
 
+						case FileCounterManager.AUTO_THREADS:
+							autoThreadMI.setSelected(true);
+							break;
+
 						default:
 							oneThreadMI.setSelected(true);
 							break;
@@ -470,6 +506,72 @@ public class SourceCodeCounterView extends FrameView
 				countBlankLinesMI.setSelected(Boolean.valueOf(userPrefs.get(CBL)));
 			}
 
+			if (userPrefs.get(SKIP_DUPLICATES) != null)
+			{
+				skipDuplicatesMI.setSelected(Boolean.valueOf(userPrefs.get(SKIP_DUPLICATES)));
+			}
+
+			if (userPrefs.get(LARGEST_FIRST) != null)
+			{
+				largestFirstMI.setSelected(Boolean.valueOf(userPrefs.get(LARGEST_FIRST)));
+			}
+
+			if (userPrefs.get(SLOW_DRIVES) != null)
+			{
+				slowDrivesMI.setSelected(Boolean.valueOf(userPrefs.get(SLOW_DRIVES)));
+			}
+
+			if (userPrefs.get(FILES_READ_AT_ONCE) != null)
+			{
+				try {
+					int files = Integer.parseInt(userPrefs.get(FILES_READ_AT_ONCE));
+					// same limits as selectFilesReadAtOnce
+					if (files > 0 && files <= MAX_FILES_READ_AT_ONCE) {
+						filesReadAtOnce = files;
+					} else {
+						log.warning("Invalid number of files to read at once: "+files);
+					}
+				} catch (NumberFormatException nfex) {
+					log.warning("Invalid number of files to read at once: "+userPrefs.get(FILES_READ_AT_ONCE));
+				}
+			}
+
+			if (userPrefs.get(SPLIT_FILES_OVER) != null)
+			{
+				try {
+					int size = Integer.parseInt(userPrefs.get(SPLIT_FILES_OVER));
+					// same limits as selectSplitFilesOver
+					if (size >= 0 && size <= MAX_SPLIT_FILES_OVER) {
+						splitFilesOver = size;
+					} else {
+						log.warning("Invalid size to split files over: "+size);
+					}
+				} catch (NumberFormatException nfex) {
+					log.warning("Invalid size to split files over: "+userPrefs.get(SPLIT_FILES_OVER));
+				}
+			}
+
+			if (userPrefs.get(LIVE_TOTALS_INTERVAL) != null)
+			{
+				try {
+					int interval = Integer.parseInt(userPrefs.get(LIVE_TOTALS_INTERVAL));
+					// same limits as selectLiveTotalsInterval
+					if (interval == 0 || (interval >= MIN_LIVE_TOTALS_INTERVAL && interval <= MAX_LIVE_TOTALS_INTERVAL)) {
+						liveTotalsInterval = interval;
+					} else {
+						log.warning("Invalid interval to refresh the totals: "+interval);
+					}
+				} catch (NumberFormatException nfex) {
+					log.warning("Invalid interval to refresh the totals: "+userPrefs.get(LIVE_TOTALS_INTERVAL));
+				}
+			}
+
+			if (userPrefs.get(INCLUDE_GLOBS) != null || userPrefs.get(EXCLUDE_GLOBS) != null || userPrefs.get(GIT_IGNORE) != null)
+			{
+				setIgnoreRules(new IgnoreRules(splitLines(userPrefs.get(INCLUDE_GLOBS)), splitLines(userPrefs.get(EXCLUDE_GLOBS)),
+					Boolean.valueOf(userPrefs.get(GIT_IGNORE))));
+			}
+
 			if (userPrefs.get(UNKNOWN_FILES_FILE_TYPE) != null)
 			{
 				unknownFilesFileType = userPrefs.get(UNKNOWN_FILES_FILE_TYPE).toString();
@@ -559,22 +661,19 @@ public class SourceCodeCounterView extends FrameView
 		
 		fileSelectionTable.getSelectionModel().clearSelection();
 
-		Set<Integer> findexes;
-		List<Integer> indexes = new ArrayList<Integer>();
-		for (String filePattern : filePatternSet)
-		{
-			findexes = fsTM.getIndexOfFilesMatchingPattern(filePattern);
-			indexes.addAll(findexes);
-		}
-
+		int selected = 0;
 		int viewRow = 0;
 		int firstRow = 99999999;
-		for (int row : indexes)
+		for (String filePattern : filePatternSet)
 		{
-			viewRow = fileSelectionTable.convertRowIndexToView(row);
-			fileSelectionTable.getSelectionModel().addSelectionInterval(viewRow, viewRow);
-			if (viewRow < firstRow) {
-				firstRow = viewRow;
+			for (int row : fsTM.getIndexOfFilesMatchingPattern(filePattern))
+			{
+				viewRow = fileSelectionTable.convertRowIndexToView(row);
+				fileSelectionTable.getSelectionModel().addSelectionInterval(viewRow, viewRow);
+				if (viewRow < firstRow) {
+					firstRow = viewRow;
+				}
+				selected++;
 			}
 		}
 		
@@ -582,7 +681,7 @@ public class SourceCodeCounterView extends FrameView
 		{
 			fileSelectionTable.scrollRectToVisible(fileSelectionTable.getCellRect(firstRow, 0, true));
 		}
-		setStatusMessage(getResourceMap().getString("select.files", indexes.size()));
+		setStatusMessage(getResourceMap().getString("select.files", selected));
 		log.exiting("SourceCodeCounterView", "highlightFileTypes");
 	}
 
@@ -590,9 +689,11 @@ public class SourceCodeCounterView extends FrameView
 	 * This method is called when the FileCounterManager has finished
 	 * @param countedFiles number of files processed
 	 * @param time time taken to count the files
+	 * @param threads number of file counters active at the end of the count
 	 * @param errors a list of errors that were encountered
+	 * @param summary totals of the files counted, skipped and found to be duplicates
 	 */
-	public void countFinished(int countedFiles, float time, Map<String, String> errors)
+	public void countFinished(int countedFiles, float time, int threads, Map<String, String> errors, SummaryDetails summary)
 	{
 		log.entering("SourceCodeCounterView", "countFinished");
 		
@@ -605,7 +706,7 @@ public class SourceCodeCounterView extends FrameView
 		saveSummaryResultsButton.setEnabled(true);
 		countButton.setEnabled(true);
 
-		ResultsDialog resultsD = new ResultsDialog(getFrame(), countedFiles, timeTaken, fileCountThreads, msgsSecFormat, errors);
+		ResultsDialog resultsD = new ResultsDialog(getFrame(), countedFiles, timeTaken, threads, msgsSecFormat, errors, summary);
 		resultsD.pack();
 		resultsD.setLocationRelativeTo(getFrame());
 		resultsD.setVisible(true);
@@ -624,6 +725,15 @@ public class SourceCodeCounterView extends FrameView
 		props.put(CHAR_SET, characterSet);
 		props.put(THREADS, Integer.toString(fileCountThreads));
 		props.put(CBL, Boolean.toString(countBlankLinesMI.isSelected()));
+		props.put(SKIP_DUPLICATES, Boolean.toString(skipDuplicatesMI.isSelected()));
+		props.put(LARGEST_FIRST, Boolean.toString(largestFirstMI.isSelected()));
+		props.put(SLOW_DRIVES, Boolean.toString(slowDrivesMI.isSelected()));
+		props.put(FILES_READ_AT_ONCE, Integer.toString(filesReadAtOnce));
+		props.put(SPLIT_FILES_OVER, Integer.toString(splitFilesOver));
+		props.put(LIVE_TOTALS_INTERVAL, Integer.toString(liveTotalsInterval));
+		props.put(INCLUDE_GLOBS, joinLines(ignoreRules.getIncludes()));
+		props.put(EXCLUDE_GLOBS, joinLines(ignoreRules.getExcludes()));
+		props.put(GIT_IGNORE, Boolean.toString(ignoreRules.isGitIgnore()));
 		props.put(UNKNOWN_FILES_FILE_TYPE, unknownFilesFileType);
 
 		return props;
@@ -869,6 +979,8 @@ public class SourceCodeCounterView extends FrameView
         javax.swing.JMenuItem exitMenuItem = new javax.swing.JMenuItem();
         optionsMenu = new javax.swing.JMenu();
         countBlankLinesMI = new javax.swing.JCheckBoxMenuItem();
+        skipDuplicatesMI = new javax.swing.JCheckBoxMenuItem();
+        largestFirstMI = new javax.swing.JCheckBoxMenuItem();
         charSetMenu = new javax.swing.JMenu();
         isoCSMI = new javax.swing.JRadioButtonMenuItem();
         asciiCSMI = new javax.swing.JRadioButtonMenuItem();
@@ -881,7 +993,14 @@ public class SourceCodeCounterView extends FrameView
         twoThreadMI = new javax.swing.JRadioButtonMenuItem();
         fourThreadMI = new javax.swing.JRadioButtonMenuItem();
         eightThreadMI = new javax.swing.JRadioButtonMenuItem();
+        autoThreadMI = new javax.swing.JRadioButtonMenuItem();
+        threadsSeparator = new javax.swing.JSeparator();
+        slowDrivesMI = new javax.swing.JCheckBoxMenuItem();
+        filesReadMI = new javax.swing.JMenuItem();
+        splitFilesMI = new javax.swing.JMenuItem();
+        liveTotalsMI = new javax.swing.JMenuItem();
         treatUnknownFilesMenu = new javax.swing.JMenu();
+        ignoreRulesMI = new javax.swing.JMenuItem();
         ignoreCBMI = new javax.swing.JRadioButtonMenuItem();
         unknownSEparator = new javax.swing.JSeparator();
         otherCBMI = new javax.swing.JRadioButtonMenuItem();
@@ -1531,6 +1650,19 @@ public class SourceCodeCounterView extends FrameView
         countBlankLinesMI.setName("countBlankLinesMI"); // NOI18N
         optionsMenu.add(countBlankLinesMI);
 
+        skipDuplicatesMI.setMnemonic('D');
+        skipDuplicatesMI.setText(resourceMap.getString("skipDuplicatesMI.text")); // NOI18N
+        skipDuplicatesMI.setToolTipText(resourceMap.getString("skipDuplicatesMI.toolTipText")); // NOI18N
+        skipDuplicatesMI.setName("skipDuplicatesMI"); // NOI18N
+        optionsMenu.add(skipDuplicatesMI);
+
+        largestFirstMI.setMnemonic('L');
+        largestFirstMI.setSelected(true);
+        largestFirstMI.setText(resourceMap.getString("largestFirstMI.text")); // NOI18N
+        largestFirstMI.setToolTipText(resourceMap.getString("largestFirstMI.toolTipText")); // NOI18N
+        largestFirstMI.setName("largestFirstMI"); // NOI18N
+        optionsMenu.add(largestFirstMI);
+
         charSetMenu.setMnemonic('C');
         charSetMenu.setText(resourceMap.getString("charSetMenu.text")); // NOI18N
         charSetMenu.setToolTipText(resourceMap.getString("charSetMenu.toolTipText")); // NOI18N
@@ -1641,6 +1773,48 @@ public class SourceCodeCounterView extends FrameView
         });
         fileCountersMenu.add(eightThreadMI);
 
+        threadButtonGroup.add(autoThreadMI);
+        autoThreadMI.setMnemonic('A');
+        autoThreadMI.setText(resourceMap.getString("autoThreadMI.text")); // NOI18N
+        autoThreadMI.setToolTipText(resourceMap.getString("autoThreadMI.toolTipText")); // NOI18N
+        autoThreadMI.setName("autoThreadMI"); // NOI18N
+        autoThreadMI.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                setThreads(evt);
+            }
+        });
+        fileCountersMenu.add(autoThreadMI);
+
+        threadsSeparator.setName("threadsSeparator"); // NOI18N
+        fileCountersMenu.add(threadsSeparator);
+
+        slowDrivesMI.setMnemonic('S');
+        slowDrivesMI.setText(resourceMap.getString("slowDrivesMI.text")); // NOI18N
+        slowDrivesMI.setToolTipText(resourceMap.getString("slowDrivesMI.toolTipText")); // NOI18N
+        slowDrivesMI.setName("slowDrivesMI"); // NOI18N
+        fileCountersMenu.add(slowDrivesMI);
+
+        filesReadMI.setAction(actionMap.get("selectFilesReadAtOnce")); // NOI18N
+        filesReadMI.setMnemonic('R');
+        filesReadMI.setText(resourceMap.getString("filesReadMI.text")); // NOI18N
+        filesReadMI.setToolTipText(resourceMap.getString("filesReadMI.toolTipText")); // NOI18N
+        filesReadMI.setName("filesReadMI"); // NOI18N
+        fileCountersMenu.add(filesReadMI);
+
+        splitFilesMI.setAction(actionMap.get("selectSplitFilesOver")); // NOI18N
+        splitFilesMI.setMnemonic('L');
+        splitFilesMI.setText(resourceMap.getString("splitFilesMI.text")); // NOI18N
+        splitFilesMI.setToolTipText(resourceMap.getString("splitFilesMI.toolTipText")); // NOI18N
+        splitFilesMI.setName("splitFilesMI"); // NOI18N
+        fileCountersMenu.add(splitFilesMI);
+
+        liveTotalsMI.setAction(actionMap.get("selectLiveTotalsInterval")); // NOI18N
+        liveTotalsMI.setMnemonic('T');
+        liveTotalsMI.setText(resourceMap.getString("liveTotalsMI.text")); // NOI18N
+        liveTotalsMI.setToolTipText(resourceMap.getString("liveTotalsMI.toolTipText")); // NOI18N
+        liveTotalsMI.setName("liveTotalsMI"); // NOI18N
+        fileCountersMenu.add(liveTotalsMI);
+
         optionsMenu.add(fileCountersMenu);
 
         treatUnknownFilesMenu.setMnemonic('T');
@@ -1667,6 +1841,13 @@ public class SourceCodeCounterView extends FrameView
 
         optionsMenu.add(treatUnknownFilesMenu);
 
+        ignoreRulesMI.setAction(actionMap.get("selectIgnoreRules")); // NOI18N
+        ignoreRulesMI.setMnemonic('I');
+        ignoreRulesMI.setText(resourceMap.getString("ignoreRulesMI.text")); // NOI18N
+        ignoreRulesMI.setToolTipText(resourceMap.getString("ignoreRulesMI.toolTipText")); // NOI18N
+        ignoreRulesMI.setName("ignoreRulesMI"); // NOI18N
+        optionsMenu.add(ignoreRulesMI);
+
         menuBar.add(optionsMenu);
 
         helpMenu.setMnemonic('H');
@@ -1812,7 +1993,8 @@ public class SourceCodeCounterView extends FrameView
 			boolean iterateOverUnknownFiles = (unknownFilesFileType != null);
 			fcManager = new FileCounterManager(this, fsTM.getFilesCount(iterateOverUnknownFiles), fsTM.getFileIterator(iterateOverUnknownFiles),
 				fileTypes, resultsTM, summaryResultsTM, characterSet, fileCountThreads, countBlankLinesMI.isSelected(),
-				unknownFilesFileType);
+				unknownFilesFileType, skipDuplicatesMI.isSelected(), largestFirstMI.isSelected(),
+				(slowDrivesMI.isSelected() ? filesReadAtOnce : 0), splitFilesOver * 1024L * 1024, liveTotalsInterval);
 			taskMonitor.setForegroundTask(fcManager);
 			fcManager.setInputBlocker(new Task.InputBlocker(fcManager, Task.BlockingScope.COMPONENT, getFrame()) {
 				@Override protected void block()
@@ -2201,7 +2383,17 @@ private void charsetChanged(java.awt.event.ActionEvent evt)//GEN-FIRST:event_cha
 				format.setOmitEncoding(true);
 				xmlOut.setFormat(format);
 				xmlOut.output(counterTM.getXML(), writer);
-				writer.println("\n<Files>");
+				writer.println("\n<IgnoreRules gitignore=\""+ignoreRules.isGitIgnore()+"\">");
+				for (String glob : ignoreRules.getIncludes())
+				{
+					writer.println("<include>"+xmlOut.escapeElementEntities(glob)+"</include>");
+				}
+				for (String glob : ignoreRules.getExcludes())
+				{
+					writer.println("<exclude>"+xmlOut.escapeElementEntities(glob)+"</exclude>");
+				}
+				writer.println("</IgnoreRules>");
+				writer.println("<Files>");
 				Iterator<FileDetails> it = fsTM.getFileIterator(true);
 				while (it.hasNext())
 				{
@@ -2237,6 +2429,9 @@ private void charsetChanged(java.awt.event.ActionEvent evt)//GEN-FIRST:event_cha
 			reader.parse(new InputSource(new BufferedInputStream(new FileInputStream(f))));
 			fileTypes = new FileTypes(saxParser.getFileTypes());
 			counterTM.setFileTypes(saxParser.getFileTypes());
+			if (saxParser.getIgnoreRules() != null) {
+				setIgnoreRules(saxParser.getIgnoreRules());
+			}
 			ftLM.setFileTypes(fsTM.getFileTypesAdded());
 			setExpandedFileTypes(fsTM.getFileTypesAdded());
 			if (fsTM.getRowCount() > 0)
@@ -2399,10 +2594,185 @@ private void charsetChanged(java.awt.event.ActionEvent evt)//GEN-FIRST:event_cha
 private void setThreads(java.awt.event.ActionEvent evt)//GEN-FIRST:event_setThreads
 {//GEN-HEADEREND:event_setThreads
 	JRadioButtonMenuItem miThread = (JRadioButtonMenuItem)evt.getSource();
+	if (miThread == autoThreadMI)
+	{
+		fileCountThreads = FileCounterManager.AUTO_THREADS;
+		setStatusMessage(getResourceMap().getString("set.threads", miThread.getText()));
+		return;
+	}
 	fileCountThreads = Integer.parseInt(miThread.getText());
 	setStatusMessage(getResourceMap().getString("set.threads", fileCountThreads));
 }//GEN-LAST:event_setThreads
 
+	/**
+	 * Allow the user to set how many files are read at once when counting on slow drives
+	 */
+	@Action
+	public void selectFilesReadAtOnce()
+	{
+		ResourceMap resourceMap = getResourceMap();
+		Object value = JOptionPane.showInputDialog(getFrame(), resourceMap.getString("files.read.prompt", MAX_FILES_READ_AT_ONCE),
+			Integer.valueOf(filesReadAtOnce));
+		if (value == null) {
+			return; // cancelled
+		}
+
+		try
+		{
+			int files = Integer.parseInt(value.toString().trim());
+			if (files > 0 && files <= MAX_FILES_READ_AT_ONCE)
+			{
+				filesReadAtOnce = files;
+				setStatusMessage(resourceMap.getString("set.files.read", filesReadAtOnce));
+				return;
+			}
+		}
+		catch (NumberFormatException nfex)
+		{
+			log.fine("Invalid number of files to read at once: "+value);
+		}
+		JOptionPane.showMessageDialog(getFrame(), resourceMap.getString("files.read.invalid", MAX_FILES_READ_AT_ONCE),
+			resourceMap.getString("error"), JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Allow the user to set the size of file that is split into segments counted at the same time
+	 */
+	@Action
+	public void selectSplitFilesOver()
+	{
+		ResourceMap resourceMap = getResourceMap();
+		Object value = JOptionPane.showInputDialog(getFrame(), resourceMap.getString("split.files.prompt", MAX_SPLIT_FILES_OVER),
+			Integer.valueOf(splitFilesOver));
+		if (value == null) {
+			return; // cancelled
+		}
+
+		try
+		{
+			int size = Integer.parseInt(value.toString().trim());
+			if (size >= 0 && size <= MAX_SPLIT_FILES_OVER)
+			{
+				splitFilesOver = size;
+				setStatusMessage(resourceMap.getString("set.split.files", splitFilesOver));
+				return;
+			}
+		}
+		catch (NumberFormatException nfex)
+		{
+			log.fine("Invalid size to split files over: "+value);
+		}
+		JOptionPane.showMessageDialog(getFrame(), resourceMap.getString("split.files.invalid", MAX_SPLIT_FILES_OVER),
+			resourceMap.getString("error"), JOptionPane.ERROR_MESSAGE);
+	}
+
+	/**
+	 * Allow the user to set the files and directories left out when adding a directory
+	 */
+	@Action
+	public void selectIgnoreRules()
+	{
+		ResourceMap resourceMap = getResourceMap();
+		JTextArea includesArea = new JTextArea(joinLines(ignoreRules.getIncludes()), 5, 30);
+		JTextArea excludesArea = new JTextArea(joinLines(ignoreRules.getExcludes()), 8, 30);
+		JCheckBox gitIgnoreCB = new JCheckBox(resourceMap.getString("ignore.rules.gitignore"), ignoreRules.isGitIgnore());
+
+		JPanel panel = new JPanel(new BorderLayout(0, 5));
+		JPanel globsPanel = new JPanel(new GridLayout(0, 1, 0, 5));
+		globsPanel.add(createLabelledPane(resourceMap.getString("ignore.rules.includes"), includesArea));
+		globsPanel.add(createLabelledPane(resourceMap.getString("ignore.rules.excludes"), excludesArea));
+		panel.add(new JLabel(resourceMap.getString("ignore.rules.prompt")), BorderLayout.NORTH);
+		panel.add(globsPanel, BorderLayout.CENTER);
+		panel.add(gitIgnoreCB, BorderLayout.SOUTH);
+
+		if (JOptionPane.showConfirmDialog(getFrame(), panel, resourceMap.getString("ignore.rules.title"),
+			JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE) == JOptionPane.OK_OPTION)
+		{
+			setIgnoreRules(new IgnoreRules(splitLines(includesArea.getText()), splitLines(excludesArea.getText()),
+				gitIgnoreCB.isSelected()));
+			setStatusMessage(resourceMap.getString("set.ignore.rules"));
+		}
+	}
+
+	private static JPanel createLabelledPane(String label, JTextArea area)
+	{
+		JPanel pane = new JPanel(new BorderLayout());
+		pane.add(new JLabel(label), BorderLayout.NORTH);
+		pane.add(new JScrollPane(area), BorderLayout.CENTER);
+		return pane;
+	}
+
+	private void setIgnoreRules(IgnoreRules rules)
+	{
+		ignoreRules = rules;
+		fstHandler.setIgnoreRules(rules);
+	}
+
+	/**
+	 * @param text lines of text; may be null
+	 * @return the lines that aren't blank
+	 */
+	private static List<String> splitLines(String text)
+	{
+		List<String> lines = new ArrayList<String>();
+		if (text != null)
+		{
+			for (String line : text.split("\n"))
+			{
+				if (line.trim().length() > 0) {
+					lines.add(line);
+				}
+			}
+		}
+		return lines;
+	}
+
+	private static String joinLines(List<String> lines)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (String line : lines)
+		{
+			if (sb.length() > 0) {
+				sb.append('\n');
+			}
+			sb.append(line);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Allow the user to set how often the summary totals are refreshed while counting
+	 */
+	@Action
+	public void selectLiveTotalsInterval()
+	{
+		ResourceMap resourceMap = getResourceMap();
+		Object value = JOptionPane.showInputDialog(getFrame(),
+			resourceMap.getString("live.totals.prompt", MIN_LIVE_TOTALS_INTERVAL, MAX_LIVE_TOTALS_INTERVAL),
+			Integer.valueOf(liveTotalsInterval));
+		if (value == null) {
+			return; // cancelled
+		}
+
+		try
+		{
+			int interval = Integer.parseInt(value.toString().trim());
+			if (interval == 0 || (interval >= MIN_LIVE_TOTALS_INTERVAL && interval <= MAX_LIVE_TOTALS_INTERVAL))
+			{
+				liveTotalsInterval = interval;
+				setStatusMessage(resourceMap.getString((interval == 0 ? "set.live.totals.off" : "set.live.totals"), liveTotalsInterval));
+				return;
+			}
+		}
+		catch (NumberFormatException nfex)
+		{
+			log.fine("Invalid interval to refresh the totals: "+value);
+		}
+		JOptionPane.showMessageDialog(getFrame(),
+			resourceMap.getString("live.totals.invalid", MIN_LIVE_TOTALS_INTERVAL, MAX_LIVE_TOTALS_INTERVAL),
+			resourceMap.getString("error"), JOptionPane.ERROR_MESSAGE);
+	}
+
 private void tabbedPaneStateChanged(javax.swing.event.ChangeEvent evt)//GEN-FIRST:event_tabbedPaneStateChanged
 {//GEN-HEADEREND:event_tabbedPaneStateChanged
 	ResourceMap resourceMap = getResourceMap();
@@ -2465,6 +2835,7 @@ private void resultsTableKeyReleased(java.awt.event.KeyEvent evt)//GEN-FIRST:eve
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton addButton;
     private javax.swing.JButton addFilesButton;
+    private javax.swing.JRadioButtonMenuItem autoThreadMI;
     private javax.swing.JRadioButtonMenuItem asciiCSMI;
     private javax.swing.JMenu charSetMenu;
     private javax.swing.JCheckBoxMenuItem countBlankLinesMI;
@@ -2476,6 +2847,7 @@ private void resultsTableKeyReleased(java.awt.event.KeyEvent evt)//GEN-FIRST:eve
     private javax.swing.JButton deleteButton;
     private javax.swing.JRadioButtonMenuItem eightThreadMI;
     private javax.swing.JMenu fileCountersMenu;
+    private javax.swing.JMenuItem filesReadMI;
     private javax.swing.JLabel filePatternsLabel;
     private javax.swing.JTextField filePatternsTextField;
     private javax.swing.JPanel fileSelectionActionsPane;
@@ -2497,10 +2869,13 @@ private void resultsTableKeyReleased(java.awt.event.KeyEvent evt)//GEN-FIRST:eve
     private javax.swing.JLabel fstLabel;
     private javax.swing.JPanel ftButtonPanel;
     private javax.swing.JRadioButtonMenuItem ignoreCBMI;
+    private javax.swing.JMenuItem ignoreRulesMI;
     private javax.swing.JRadioButtonMenuItem isoCSMI;
     private javax.swing.JSeparator jSeparator1;
     private javax.swing.JSeparator jSeparator2;
     private javax.swing.JMenuItem loadFSMI;
+    private javax.swing.JCheckBoxMenuItem largestFirstMI;
+    private javax.swing.JMenuItem liveTotalsMI;
     private javax.swing.JMenuItem loadProfileMI;
     private javax.swing.JPanel mainPanel;
     private javax.swing.JMenuBar menuBar;
@@ -2536,6 +2911,9 @@ private void resultsTableKeyReleased(java.awt.event.KeyEvent evt)//GEN-FIRST:eve
     private javax.swing.JButton saveSummaryResultsButton;
     private javax.swing.JButton searchButton;
     private javax.swing.JButton selectUnknownButton;
+    private javax.swing.JCheckBoxMenuItem skipDuplicatesMI;
+    private javax.swing.JCheckBoxMenuItem slowDrivesMI;
+    private javax.swing.JMenuItem splitFilesMI;
     private javax.swing.JLabel statusAnimationLabel;
     private javax.swing.JLabel statusMessageLabel;
     private javax.swing.JPanel statusPanel;
@@ -2544,6 +2922,7 @@ private void resultsTableKeyReleased(java.awt.event.KeyEvent evt)//GEN-FIRST:eve
     private javax.swing.JLabel tab2FTLabel;
     private javax.swing.JTabbedPane tabbedPane;
     private javax.swing.ButtonGroup threadButtonGroup;
+    private javax.swing.JSeparator threadsSeparator;
     private javax.swing.JTextField totalField;
     private javax.swing.JLabel totalLabel;
     private javax.swing.JMenu treatUnknownFilesMenu;
@@ -0,0 +1,238 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab1;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import nrs.scc.tab3.FileDetails;
+
+/**
+ * Lists the files under a number of directories using several threads, so that the time
+ * spent waiting on the file system for one directory overlaps with the others. This makes
+ * the most difference on network drives and large checkouts.
+ * <p>
+ * Each directory is a task on a shared work queue; listing it queues a task for each of its
+ * subdirectories. The FileDetails of the files found, which read their size and modified date,
+ * are created on the walking threads and passed to the {@link Listener} in batches.
+ * <p>
+ * Any {@link IgnoreRules} are applied as each directory is listed, so a directory that is
+ * left out is never listed at all.
+ * <p>
+ * Symbolic links to directories are followed, but each directory is only listed once
+ * whatever the number of paths to it, so a link back up the tree doesn't loop forever.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class DirectoryWalker
+{
+	/**
+	 * Receives the files found; called by the walking threads
+	 */
+	interface Listener
+	{
+		/**
+		 * @param files a batch of files found, which the listener may keep
+		 */
+		void filesFound(List<FileDetails> files);
+
+		/**
+		 * @param dir a directory about to be listed
+		 */
+		void enteringDirectory(File dir);
+	}
+
+	/** files passed to the listener at once */
+	private static final int BATCH_SIZE = 256;
+
+	private final Listener listener;
+	/** null if every file is added */
+	private final IgnoreRules rules;
+	private final ExecutorService executor;
+	/** directories queued or being listed */
+	private final AtomicInteger pending = new AtomicInteger();
+	private final CountDownLatch finished = new CountDownLatch(1);
+	/** canonical paths of the directories listed so far */
+	private final ConcurrentMap<String, Boolean> listed = new ConcurrentHashMap<String, Boolean>();
+	private final static Logger log = Logger.getLogger(DirectoryWalker.class.getName());
+
+	/**
+	 * @param threads number of directories listed at once
+	 * @param listener
+	 * @param rules files and directories to leave out; null or empty to add everything
+	 */
+	DirectoryWalker(int threads, Listener listener, IgnoreRules rules)
+	{
+		this.listener = listener;
+		this.rules = (rules == null || rules.isEmpty() ? null : rules);
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count;
+
+			@Override
+			public synchronized Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "DirectoryWalker-"+(count++));
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * List all the files under the directories, returning once they have all been found
+	 * @param dirs
+	 * @throws InterruptedException if interrupted while waiting, in which case the walk is stopped
+	 */
+	void walk(List<File> dirs) throws InterruptedException
+	{
+		try
+		{
+			pending.incrementAndGet(); // stops the walk finishing while the directories are queued
+			File root;
+			for (File dir : dirs)
+			{
+				root = dir.getAbsoluteFile();
+				queue(root, root.getPath(), null);
+			}
+			directoryDone();
+			finished.await();
+		}
+		finally
+		{
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param dir the directory to list
+	 * @param root path of the directory added that it is in
+	 * @param gitIgnores the rules of the .gitignore files above it
+	 */
+	private void queue(final File dir, final String root, final IgnoreRules.GitIgnores gitIgnores)
+	{
+		pending.incrementAndGet();
+		try
+		{
+			executor.execute(new Runnable() {
+				@Override
+				public void run()
+				{
+					try {
+						list(dir, root, gitIgnores);
+					} finally {
+						directoryDone();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException ree)
+		{
+			directoryDone(); // the walk has been stopped
+		}
+	}
+
+	private void directoryDone()
+	{
+		if (pending.decrementAndGet() == 0) {
+			finished.countDown();
+		}
+	}
+
+	/**
+	 * List a directory, queueing its subdirectories and passing on its files
+	 */
+	private void list(File dir, String root, IgnoreRules.GitIgnores gitIgnores)
+	{
+		if (Thread.currentThread().isInterrupted() || !isFirstVisit(dir)) {
+			return;
+		}
+
+		listener.enteringDirectory(dir);
+		File[] entries = dir.listFiles();
+		if (entries == null)
+		{
+			log.fine("Cannot list "+dir);
+			return;
+		}
+
+		if (rules != null) {
+			gitIgnores = rules.enterDirectory(gitIgnores, dir, entries);
+		}
+
+		List<FileDetails> batch = new ArrayList<FileDetails>(Math.min(entries.length, BATCH_SIZE));
+		boolean directory;
+		for (File entry : entries)
+		{
+			directory = entry.isDirectory();
+			if (rules != null && rules.isExcluded(root, entry, directory, gitIgnores)) {
+				continue;
+			}
+			if (directory)
+			{
+				queue(entry, root, gitIgnores);
+				continue;
+			}
+
+			// java.io.File has no single call for all the attributes, so reading the size and
+			// modified date here means two more for each file
+			batch.add(new FileDetails(entry));
+			if (batch.size() == BATCH_SIZE)
+			{
+				listener.filesFound(batch);
+				batch = new ArrayList<FileDetails>(BATCH_SIZE);
+			}
+		}
+		if (!batch.isEmpty()) {
+			listener.filesFound(batch);
+		}
+	}
+
+	/**
+	 * Record that a directory is being listed
+	 * @param dir
+	 * @return false if it has already been listed through another path
+	 */
+	private boolean isFirstVisit(File dir)
+	{
+		String path;
+		try {
+			path = dir.getCanonicalPath();
+		} catch (IOException ioe) {
+			path = dir.getAbsolutePath();
+		}
+
+		if (listed.putIfAbsent(path, Boolean.TRUE) != null)
+		{
+			log.fine("Already listed "+path+", not listing "+dir+" again");
+			return false;
+		}
+		return true;
+	}
+}
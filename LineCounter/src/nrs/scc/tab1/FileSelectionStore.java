@@ -0,0 +1,318 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab1;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import nrs.scc.tab3.FileDetails;
+
+/**
+ * The selected files held column by column so that millions of them can be selected
+ * without a FileDetails object, and its strings, for each one.
+ * <p>
+ * Each row holds the file name, the id of its directory and of its extension, and the size
+ * and modified date in primitive arrays. The directories and extensions are each held once,
+ * however many files share them. The rows are also indexed by path in an open addressing
+ * hash table of row numbers, so a file already selected can be found without a set of paths.
+ * <p>
+ * FileDetails are only created when asked for, e.g. when the files are counted.
+ * Not thread safe; used on the event dispatch thread by the FileSelectionTableModel.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class FileSelectionStore
+{
+	private final static int INITIAL_CAPACITY = 1024;
+	/** no extension; the file type is the file name */
+	private final static int NO_EXTENSION = -1;
+
+	// directory paths, including the trailing separator, by id
+	private final List<String> directories = new ArrayList<String>();
+	private final Map<String, Integer> directoryIds = new HashMap<String, Integer>();
+	// files are usually added a directory at a time
+	private String lastDirectory;
+	private int lastDirectoryId;
+
+	private final List<String> extensions = new ArrayList<String>();
+	private final Map<String, Integer> extensionIds = new HashMap<String, Integer>();
+
+	// the rows
+	private int count = 0;
+	private String[] names;
+	private int[] directoryOf;
+	private int[] extensionOf;
+	private long[] sizes;
+	private long[] lastModified;
+
+	/** row+1 of the file hashed to each slot, 0 if empty; at most half full */
+	private int[] slots;
+
+	FileSelectionStore()
+	{
+		clear();
+	}
+
+	/**
+	 * Remove all the files
+	 */
+	void clear()
+	{
+		directories.clear();
+		directoryIds.clear();
+		lastDirectory = null;
+		extensions.clear();
+		extensionIds.clear();
+		count = 0;
+		names = new String[INITIAL_CAPACITY];
+		directoryOf = new int[INITIAL_CAPACITY];
+		extensionOf = new int[INITIAL_CAPACITY];
+		sizes = new long[INITIAL_CAPACITY];
+		lastModified = new long[INITIAL_CAPACITY];
+		slots = new int[INITIAL_CAPACITY*2];
+	}
+
+	/**
+	 * @return the number of files
+	 */
+	int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Add a file unless it has already been added
+	 * @param path absolute path to the file
+	 * @param name file name excluding the path, which the path ends with
+	 * @param extension file extension as lower case, or null
+	 * @param size size of the file
+	 * @param modified modified time of the file
+	 * @return true if the file was added; false if it was already present
+	 */
+	boolean add(String path, String name, String extension, long size, long modified)
+	{
+		assert path.endsWith(name) : path+" does not end with "+name;
+
+		int directory = getDirectoryId(path, path.length() - name.length());
+		int slot = findSlot(directory, name);
+		if (slots[slot] != 0) {
+			return false;
+		}
+
+		if (count == names.length) {
+			grow();
+		}
+		names[count] = name;
+		directoryOf[count] = directory;
+		extensionOf[count] = getExtensionId(extension);
+		sizes[count] = size;
+		lastModified[count] = modified;
+		slots[slot] = ++count;
+
+		if (count*2 > slots.length) {
+			rehash(slots.length*2);
+		}
+		return true;
+	}
+
+	/**
+	 * Remove files
+	 * @param rows the rows to remove in ascending order
+	 */
+	void remove(int[] rows)
+	{
+		if (rows.length == 0) {
+			return;
+		}
+
+		// move the remaining rows down over the gaps in one pass
+		int to = rows[0];
+		int next = 0;
+		for (int from=rows[0]; from<count; from++)
+		{
+			if (next < rows.length && rows[next] == from)
+			{
+				while (next < rows.length && rows[next] == from) {
+					next++;
+				}
+				continue;
+			}
+			names[to] = names[from];
+			directoryOf[to] = directoryOf[from];
+			extensionOf[to] = extensionOf[from];
+			sizes[to] = sizes[from];
+			lastModified[to] = lastModified[from];
+			to++;
+		}
+		Arrays.fill(names, to, count, null);
+		count = to;
+
+		rehash(slots.length);
+	}
+
+	/**
+	 * @param row the row
+	 * @return the full path to the file
+	 */
+	String getPath(int row)
+	{
+		return directories.get(directoryOf[row]).concat(names[row]);
+	}
+
+	/**
+	 * @param row the row
+	 * @return either the file extension if it has one, otherwise the file name excluding the path
+	 */
+	String getFileType(int row)
+	{
+		int extension = extensionOf[row];
+		return (extension == NO_EXTENSION ? names[row] : extensions.get(extension));
+	}
+
+	long getSize(int row)
+	{
+		return sizes[row];
+	}
+
+	long getLastModified(int row)
+	{
+		return lastModified[row];
+	}
+
+	/**
+	 * Create the details of a file
+	 * @param row the row
+	 * @return new FileDetails, with no totals
+	 */
+	FileDetails getFileDetails(int row)
+	{
+		int extension = extensionOf[row];
+		return new FileDetails(getPath(row), names[row], (extension == NO_EXTENSION ? null : extensions.get(extension)),
+			sizes[row], lastModified[row]);
+	}
+
+	/**
+	 * Find the files of a file type
+	 * @param fileType file extension, or file name for files without one
+	 * @return the rows in ascending order
+	 */
+	int[] getRows(String fileType)
+	{
+		Integer id = extensionIds.get(fileType);
+		int extension = (id == null ? Integer.MIN_VALUE : id);
+		int[] rows = new int[16];
+		int found = 0;
+		for (int row=0; row<count; row++)
+		{
+			if (extensionOf[row] == extension || (extensionOf[row] == NO_EXTENSION && names[row].equals(fileType)))
+			{
+				if (found == rows.length) {
+					rows = Arrays.copyOf(rows, found*2);
+				}
+				rows[found++] = row;
+			}
+		}
+		return Arrays.copyOf(rows, found);
+	}
+
+	private int getDirectoryId(String path, int length)
+	{
+		if (lastDirectory != null && lastDirectory.length() == length && path.startsWith(lastDirectory)) {
+			return lastDirectoryId;
+		}
+
+		String directory = path.substring(0, length);
+		Integer id = directoryIds.get(directory);
+		if (id == null)
+		{
+			id = directories.size();
+			directories.add(directory);
+			directoryIds.put(directory, id);
+		}
+		lastDirectory = directory;
+		lastDirectoryId = id;
+		return id;
+	}
+
+	private int getExtensionId(String extension)
+	{
+		if (extension == null) {
+			return NO_EXTENSION;
+		}
+
+		Integer id = extensionIds.get(extension);
+		if (id == null)
+		{
+			id = extensions.size();
+			extensions.add(extension);
+			extensionIds.put(extension, id);
+		}
+		return id;
+	}
+
+	/**
+	 * Find the slot holding a file, or the empty slot it would go in
+	 */
+	private int findSlot(int directory, String name)
+	{
+		int mask = slots.length - 1;
+		int slot = hash(directory, name) & mask;
+		int row;
+		while ((row = slots[slot]) != 0)
+		{
+			row--;
+			if (directoryOf[row] == directory && names[row].equals(name)) {
+				break;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private static int hash(int directory, String name)
+	{
+		int h = directory * 0x9E3779B9 + name.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Rebuild the path index
+	 * @param capacity number of slots; a power of 2
+	 */
+	private void rehash(int capacity)
+	{
+		slots = new int[capacity];
+		for (int row=0; row<count; row++) {
+			slots[findSlot(directoryOf[row], names[row])] = row+1;
+		}
+	}
+
+	private void grow()
+	{
+		int capacity = names.length*2;
+		names = Arrays.copyOf(names, capacity);
+		directoryOf = Arrays.copyOf(directoryOf, capacity);
+		extensionOf = Arrays.copyOf(extensionOf, capacity);
+		sizes = Arrays.copyOf(sizes, capacity);
+		lastModified = Arrays.copyOf(lastModified, capacity);
+	}
+}
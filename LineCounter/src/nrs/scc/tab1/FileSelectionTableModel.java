@@ -19,31 +19,26 @@
 package nrs.scc.tab1;
 
 import java.io.File;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
-import java.util.Set;
 import javax.swing.table.AbstractTableModel;
 import nrs.scc.tab2.FileTypes;
 import nrs.scc.tab3.FileDetails;
 
 /**
- * Selected files
+ * Selected files, held in a {@link FileSelectionStore}
  *
  * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
  */
 public class FileSelectionTableModel extends AbstractTableModel
 {
-	// use a set to prevent having to iterate through the list every time
-	private Set<String> addedFiles = new HashSet<String>();
-	private List<FileDetails> files = new ArrayList<FileDetails>();
+	private final FileSelectionStore files = new FileSelectionStore();
 	private Map<String, Integer> fileTypesCount = new HashMap<String, Integer>();
-	private Map<String, Set<Integer>> patternIndex = new HashMap<String, Set<Integer>>();
 
 	// required so that iterator can determine correct file types to iterate over
 	private FileTypes fileTypes;
@@ -54,7 +49,8 @@ public class FileSelectionTableModel extends AbstractTableModel
 
 	/**
 	 * Iterator over the files that checks that the files are known file types.
-	 * If not, they are excluded from the iteration
+	 * If not, they are excluded from the iteration. The FileDetails are created
+	 * as they are returned so each iteration gets its own.
 	 */
 	private class FileIterator implements Iterator<FileDetails>
 	{
@@ -70,8 +66,7 @@ public class FileSelectionTableModel extends AbstractTableModel
 		{
 			while (index < files.size())
 			{
-				FileDetails fd = files.get(index);
-				if (iterateOverUnknown || fileTypes.isKnownFileType(fd.getFileType())) {
+				if (iterateOverUnknown || fileTypes.isKnownFileType(files.getFileType(index))) {
 					return true;
 				}
 				index++;
@@ -84,7 +79,7 @@ public class FileSelectionTableModel extends AbstractTableModel
 		{
 			if (index < files.size())
 			{
-				return files.get(index++);
+				return files.getFileDetails(index++);
 			}
 			else
 			{
@@ -137,11 +132,11 @@ public class FileSelectionTableModel extends AbstractTableModel
 	/**
 	 * Return the indexes of files with the specified file extension
 	 * @param filePattern file pattern, e.g. SourceCodeCounter.java or java
-	 * @return Set of indexes; may be null
+	 * @return indexes in ascending order; empty if there are none
 	 */
-	public Set<Integer> getIndexOfFilesMatchingPattern(String filePattern)
+	public int[] getIndexOfFilesMatchingPattern(String filePattern)
 	{
-		return patternIndex.get(filePattern);
+		return files.getRows(filePattern);
 	}
 	
 	public int getColumnCount()
@@ -171,25 +166,23 @@ public class FileSelectionTableModel extends AbstractTableModel
 		assert rowIndex <= getRowCount();
 		assert columnIndex < colNames.length;
 		
-		FileDetails details = files.get(rowIndex);
-
 		Object value;
 		switch (columnIndex)
 		{
 			case 1: 
-				value = details.getFileType();
+				value = files.getFileType(rowIndex);
 				break;
 
 			case 2:
-				value = details.getSize();
+				value = files.getSize(rowIndex);
 				break;
 
 			case 3:
-				value = details.getModifiedDate();
+				value = new Date(files.getLastModified(rowIndex));
 				break;
 
 			default:
-				value = details.getPath(); // case 0
+				value = files.getPath(rowIndex); // case 0
 				break;
 		}
 		
@@ -200,9 +193,11 @@ public class FileSelectionTableModel extends AbstractTableModel
 	{
 		int lastRow = files.size()-1;
 		files.clear();
-		addedFiles.clear();
 		fileTypesCount.clear();
-		fireTableRowsDeleted(0, lastRow);
+		knownFileCount = 0;
+		if (lastRow >= 0) {
+			fireTableRowsDeleted(0, lastRow);
+		}
 	}
 
 	/**
@@ -215,41 +210,60 @@ public class FileSelectionTableModel extends AbstractTableModel
 		assert !filesList.isEmpty() : "Cannot add an empty list";
 
 		int firstRow = files.size();
-		String absPath;
+		String name;
 		for (File file : filesList)
 		{
 			// only add the file if it's not already been added
-			absPath = file.getAbsolutePath();
-			if (!addedFiles.contains(absPath))
+			name = file.getName();
+			if (files.add(file.getAbsolutePath(), name, FileDetails.getFileExtension(name), file.length(), file.lastModified()))
 			{
-				FileDetails fd = new FileDetails(file);
-				files.add(fd);
-				addedFiles.add(absPath);
-
-				// increment files types count
-				String fileType = fd.getFileType();
-				Integer count = fileTypesCount.get(fileType);
-				if (count == null) {
-					count = 1;
-				} else {
-					count++;
-				}
-				fileTypesCount.put(fileType, count);
+				addFileType(files.getFileType(files.size()-1));
+			}
+		}
 
-				if (fileTypes.isKnownFileType(fd.getFileType())) {
-					knownFileCount++;
-				}
+		fireRowsAdded(firstRow);
+	}
 
-				// increment pattern index
-				Set<Integer> pI = patternIndex.get(fileType);
-				if (pI == null) {
-					pI = new HashSet<Integer>();
-				}
-				pI.add(files.size()-1); // items get added to the end
-				patternIndex.put(fileType, pI);
+	/**
+	 * Add files whose details have already been read, e.g. while walking a directory.
+	 * Only the details are kept, not the FileDetails themselves.
+	 * @param detailsList the files, with absolute paths
+	 */
+	public void addFileDetails(List<FileDetails> detailsList)
+	{
+		assert detailsList != null : "Cannot add a null list of files";
+
+		int firstRow = files.size();
+		for (FileDetails fd : detailsList)
+		{
+			// only add the file if it's not already been added
+			if (files.add(fd.getPath(), fd.getName(), fd.getFileExtension(), fd.getSize(), fd.getLastModified()))
+			{
+				addFileType(fd.getFileType());
 			}
 		}
 
+		fireRowsAdded(firstRow);
+	}
+
+	private void addFileType(String fileType)
+	{
+		// increment files types count
+		Integer count = fileTypesCount.get(fileType);
+		if (count == null) {
+			count = 1;
+		} else {
+			count++;
+		}
+		fileTypesCount.put(fileType, count);
+
+		if (fileTypes.isKnownFileType(fileType)) {
+			knownFileCount++;
+		}
+	}
+
+	private void fireRowsAdded(int firstRow)
+	{
 		int lastRow = files.size() - 1;
 		if (lastRow >= firstRow) {
 			fireTableRowsInserted(firstRow, lastRow);
@@ -265,15 +279,6 @@ public class FileSelectionTableModel extends AbstractTableModel
 		return fileTypesCount;
 	}
 
-	private void removeRows(int firstRow, int lastRow)
-	{
-		for (int row=lastRow; row>=firstRow; row--)
-		{
-			files.remove(row);
-		}
-		fireTableRowsDeleted(firstRow, lastRow);
-	}
-
 	/**
 	 * Remove the specified rows from the table model
 	 * @param rows row indexes from the model
@@ -281,25 +286,19 @@ public class FileSelectionTableModel extends AbstractTableModel
 	 */
 	public Map<String, Integer> removeRows(int[] rows)
 	{
+		if (rows.length == 0) {
+			return fileTypesCount;
+		}
+
 		// sort into ascending order
 		Arrays.sort(rows);
 
-		// remove entries starting from the end
-		int row;
-		int firstRow = -1;
-		int lastRow = -1;
-		int lastDeleteRow = -1;
-		FileDetails fd;
 		String fileType;
 		int count;
-		for (int listIndex = rows.length-1; listIndex>-1; listIndex--)
+		for (int row : rows)
 		{
-			row = rows[listIndex];
-			fd = files.get(row);
-			addedFiles.remove(fd.getPath());
-
 			// update file types count
-			fileType = fd.getFileType();
+			fileType = files.getFileType(row);
 			count = fileTypesCount.get(fileType)-1;
 
 			if (count == 0) {
@@ -308,43 +307,19 @@ public class FileSelectionTableModel extends AbstractTableModel
 				fileTypesCount.put(fileType, count);
 			}
 
-			if (fileTypes.isKnownFileType(fd.getFileType())) {
+			if (fileTypes.isKnownFileType(fileType)) {
 				knownFileCount--;
 			}
-
-			if (firstRow == -1) {
-				firstRow = lastRow = row;
-			}
-
-			if (firstRow - row > 1)
-			{
-				removeRows(firstRow, lastRow);
-				lastDeleteRow = firstRow;
-				lastRow = row;
-			}
-			
-			firstRow = row;
 		}
 
-		if (lastDeleteRow != firstRow)
-		{
-			removeRows(firstRow, lastRow);
-		}
-
-		// update pattern index
-		Set<Integer> pIndexes;
-		patternIndex.clear();
-		for (row=0; row<files.size(); row++)
-		{
-			fd = files.get(row);
-			fileType = fd.getFileType();
-			pIndexes = patternIndex.get(fileType);
-			if (pIndexes == null)
-			{
-				pIndexes = new HashSet<Integer>();
-				patternIndex.put(fileType, pIndexes);
-			}
-			pIndexes.add(row);
+		int firstRow = rows[0];
+		int lastRow = rows[rows.length-1];
+		files.remove(rows);
+		if (lastRow - firstRow == rows.length - 1) {
+			fireTableRowsDeleted(firstRow, lastRow);
+		} else {
+			// the rows are removed in one go, so the gaps can't be reported one at a time
+			fireTableDataChanged();
 		}
 
 		return fileTypesCount;
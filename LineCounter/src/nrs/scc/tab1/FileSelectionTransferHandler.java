@@ -25,9 +25,13 @@ import java.util.logging.Logger;
 import nrs.scc.*;
 import java.awt.datatransfer.DataFlavor;
 import java.io.File;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
 import javax.swing.TransferHandler;
+import nrs.scc.tab3.FileDetails;
 import org.jdesktop.application.Application;
 import org.jdesktop.application.Task;
 import org.jdesktop.application.TaskMonitor;
@@ -43,15 +47,34 @@ public class FileSelectionTransferHandler extends TransferHandler
 	private FileSelectionTableModel fstm;
 	private Application app;
 	private TaskMonitor monitor;
+	/** files and directories left out when adding a directory */
+	private volatile IgnoreRules ignoreRules;
 	private static final String FILE="file://";
+	/** directories listed at once when adding */
+	private static final int WALKER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
 	private static final Logger log = Logger.getLogger(FileSelectionTableModel.class.getName());
 	
-	private class AddFilesTask extends Task
+	/**
+	 * Adds the files in the background, walking any directories with a {@link DirectoryWalker}.
+	 * The files found are queued and added to the table model in one go by a single
+	 * runnable on the event dispatch thread, however many batches arrive meanwhile.
+	 */
+	private class AddFilesTask extends Task implements DirectoryWalker.Listener
 	{
-		private boolean cancel = false;
 		private static final int FILE_CACHE_SIZE = 50;
+		/** nanoseconds between the directories shown while adding */
+		private static final long MESSAGE_INTERVAL = 100 * 1000 * 1000;
 		private List<File> fileList;
-		private List<File> fileListCache = new ArrayList<File>(FILE_CACHE_SIZE);
+		private final Queue<List<FileDetails>> found = new ConcurrentLinkedQueue<List<FileDetails>>();
+		private final AtomicBoolean addScheduled = new AtomicBoolean();
+		private final Runnable addFound = new Runnable() {
+			@Override
+			public void run()
+			{
+				addFoundFiles();
+			}
+		};
+		private volatile long lastMessage;
 		
 		public AddFilesTask(List<File> fileList)
 		{
@@ -59,57 +82,73 @@ public class FileSelectionTransferHandler extends TransferHandler
 			this.fileList = fileList;
 		}
 
-		private void addFile(File f)
+		@Override
+		public void filesFound(List<FileDetails> files)
 		{
-			fileListCache.add(f);
-			if (fileListCache.size() == FILE_CACHE_SIZE)
-			{
-				fstm.addFiles(fileListCache);
-				fileListCache.clear();
+			found.add(files);
+			if (addScheduled.compareAndSet(false, true)) {
+				SwingUtilities.invokeLater(addFound);
 			}
 		}
 
-		private void addFilesInDirectory(File f)
+		@Override
+		public void enteringDirectory(File dir)
 		{
-			assert f.isDirectory() : "File is not a directory "+f.getAbsolutePath();
-
-			List<File> dirList = new ArrayList<File>();
-
-			for (File file : f.listFiles())
+			long now = System.nanoTime();
+			if (now - lastMessage >= MESSAGE_INTERVAL)
 			{
-				message("adding", file.getAbsolutePath());
-				if (file.isDirectory()) {
-					dirList.add(file);
-				} else {
-					addFile(file);
-				}
+				lastMessage = now;
+				message("adding", dir.getPath());
 			}
+		}
 
-			for (File dir : dirList)
-			{
-				addFilesInDirectory(dir);
+		/**
+		 * Add all the files found so far to the table model; called on the event dispatch thread
+		 */
+		private void addFoundFiles()
+		{
+			addScheduled.set(false);
+			List<FileDetails> files = found.poll();
+			if (files == null) {
+				return;
+			}
+			List<FileDetails> all = new ArrayList<FileDetails>(files);
+			while ((files = found.poll()) != null) {
+				all.addAll(files);
 			}
+			fstm.addFileDetails(all);
 		}
 	
 		@Override protected Object doInBackground() throws Exception
 		{
 			List<File> dirList = new ArrayList<File>();
-			Iterator it = fileList.iterator();
-			File file;
-			while (it.hasNext() && !cancel)
+			List<FileDetails> fileCache = new ArrayList<FileDetails>(FILE_CACHE_SIZE);
+			for (File file : fileList)
 			{
-				file = (File)it.next();
+				if (isCancelled()) {
+					return null;
+				}
 				message("adding", file.getAbsolutePath());
-				if (file.isDirectory()) {
+				if (file.isDirectory())
+				{
 					dirList.add(file);
-				} else {
-					addFile(file);
 				}
+				else
+				{
+					fileCache.add(new FileDetails(file.getAbsoluteFile()));
+					if (fileCache.size() == FILE_CACHE_SIZE)
+					{
+						filesFound(fileCache);
+						fileCache = new ArrayList<FileDetails>(FILE_CACHE_SIZE);
+					}
+				}
+			}
+			if (!fileCache.isEmpty()) {
+				filesFound(fileCache);
 			}
 
-			for (File dir : dirList)
-			{
-				addFilesInDirectory(dir);
+			if (!dirList.isEmpty()) {
+				new DirectoryWalker(WALKER_THREADS, this, ignoreRules).walk(dirList);
 			}
 
 			fileList = null;
@@ -119,22 +158,13 @@ public class FileSelectionTransferHandler extends TransferHandler
 
 		@Override protected void succeeded(Object arg0)
 		{
-			if (!fileListCache.isEmpty())
-			{
-				fstm.addFiles(fileListCache);
-				fileListCache.clear();
-			}
+			addFoundFiles();
 			sccView.dropFilesFinished(fstm.getFileTypesAdded());
 		}
 
 		@Override protected void cancelled()
 		{
-			cancel = true;
-			if (!fileListCache.isEmpty())
-			{
-				fstm.addFiles(fileListCache);
-				fileListCache.clear();
-			}
+			addFoundFiles();
 			sccView.dropFilesFinished(fstm.getFileTypesAdded());
 		}
 	}
@@ -147,6 +177,14 @@ public class FileSelectionTransferHandler extends TransferHandler
 		this.fstm = fstm;
 	}
 	
+	/**
+	 * @param ignoreRules files and directories to leave out when adding a directory; null to add everything
+	 */
+	public void setIgnoreRules(IgnoreRules ignoreRules)
+	{
+		this.ignoreRules = ignoreRules;
+	}
+
 	@Override
 	public boolean canImport(TransferSupport support)
 	{
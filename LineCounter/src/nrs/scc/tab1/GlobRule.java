@@ -0,0 +1,199 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab1;
+
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A single glob in the syntax of a .gitignore line, matched against the path of a file
+ * relative to the directory the rule belongs to.
+ * <ul>
+ * <li>* matches anything except a /, ? a single char other than /, [...] one of a set of chars
+ * <li>** matches any number of directories, e.g. **&#47;build, logs/** or a/**&#47;b
+ * <li>a glob without a / other than at the end matches the name of a file or directory at any
+ * depth; with one it matches the relative path, any leading / being dropped
+ * <li>a trailing / only matches directories
+ * <li>a leading ! makes files matching the glob not ignored after all
+ * <li>blank lines and lines starting with # are ignored; \ quotes the next char
+ * </ul>
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class GlobRule
+{
+	private final Pattern pattern;
+	private final boolean negated;
+	private final boolean directoryOnly;
+	/** true if matched against the relative path, false if against the name */
+	private final boolean anchored;
+	private final static Logger log = Logger.getLogger(GlobRule.class.getName());
+
+	private GlobRule(Pattern pattern, boolean negated, boolean directoryOnly, boolean anchored)
+	{
+		this.pattern = pattern;
+		this.negated = negated;
+		this.directoryOnly = directoryOnly;
+		this.anchored = anchored;
+	}
+
+	/**
+	 * @param line a line of a .gitignore file or a glob entered by the user
+	 * @return the rule or null if the line is blank, a comment or not a valid glob
+	 */
+	static GlobRule parse(String line)
+	{
+		String glob = trimTrailingBlanks(line);
+		if (glob.length() == 0 || glob.charAt(0) == '#') {
+			return null;
+		}
+
+		boolean negated = (glob.charAt(0) == '!');
+		if (negated) {
+			glob = glob.substring(1);
+		}
+		boolean directoryOnly = glob.endsWith("/");
+		if (directoryOnly) {
+			glob = glob.substring(0, glob.length()-1);
+		}
+		boolean anchored = (glob.indexOf('/') != -1);
+		if (glob.startsWith("/")) {
+			glob = glob.substring(1);
+		}
+		if (glob.length() == 0) {
+			return null;
+		}
+
+		try
+		{
+			return new GlobRule(Pattern.compile(toRegex(glob)), negated, directoryOnly, anchored);
+		}
+		catch (PatternSyntaxException psex)
+		{
+			log.warning("Invalid glob "+line+": "+psex.getDescription());
+			return null;
+		}
+	}
+
+	/**
+	 * Trailing blanks are ignored unless quoted with \
+	 */
+	private static String trimTrailingBlanks(String line)
+	{
+		int end = line.length();
+		while (end > 0 && line.charAt(end-1) == ' ' && (end < 2 || line.charAt(end-2) != '\\')) {
+			end--;
+		}
+		if (end > 0 && line.charAt(end-1) == '\r') {
+			end--;
+		}
+		return line.substring(0, end);
+	}
+
+	private static String toRegex(String glob)
+	{
+		StringBuilder sb = new StringBuilder(glob.length() * 2);
+		char c;
+		int end;
+		for (int i=0; i<glob.length(); i++)
+		{
+			c = glob.charAt(i);
+			if (c == '*' && glob.startsWith("**", i) && (i == 0 || glob.charAt(i-1) == '/'))
+			{
+				if (i+2 == glob.length())
+				{
+					sb.append(".*"); // everything inside
+					i++;
+				}
+				else if (glob.charAt(i+2) == '/')
+				{
+					sb.append("(?:.*/)?"); // any number of directories
+					i += 2;
+				}
+				else
+				{
+					sb.append("[^/]*");
+				}
+			}
+			else if (c == '*')
+			{
+				sb.append("[^/]*");
+			}
+			else if (c == '?')
+			{
+				sb.append("[^/]");
+			}
+			else if (c == '[' && (end = glob.indexOf(']', i+2)) != -1)
+			{
+				sb.append('[');
+				int start = i+1;
+				if (glob.charAt(start) == '!' || glob.charAt(start) == '^')
+				{
+					sb.append('^');
+					start++;
+				}
+				for (int j=start; j<end; j++)
+				{
+					c = glob.charAt(j);
+					if (c == '\\' || c == '[' || c == ']' || c == '&') {
+						sb.append('\\');
+					}
+					sb.append(c);
+				}
+				sb.append(']');
+				i = end;
+			}
+			else
+			{
+				if (c == '\\' && i+1 < glob.length()) {
+					c = glob.charAt(++i);
+				}
+				if ("\\^$.|?*+()[]{}".indexOf(c) != -1) {
+					sb.append('\\');
+				}
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param path path relative to the directory the rule belongs to, separated by /
+	 * @param name name of the file or directory
+	 * @param directory true if it is a directory
+	 * @return true if the rule applies
+	 */
+	boolean matches(String path, String name, boolean directory)
+	{
+		if (directoryOnly && !directory) {
+			return false;
+		}
+		return pattern.matcher(anchored ? path : name).matches();
+	}
+
+	/**
+	 * @return true if a match means the file is not ignored after all
+	 */
+	boolean isNegated()
+	{
+		return negated;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab1;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rules deciding which files are left out when adding a directory, applied while the
+ * directory is walked so that whole subtrees such as build output are never listed.
+ * <p>
+ * Directories and files matching an exclude glob are skipped; if there are any include
+ * globs, only files matching one of them are added. The globs use the syntax of a
+ * .gitignore file (see {@link GlobRule}) and are matched against paths relative to the
+ * directory being added. Optionally the .gitignore files found in the tree are honoured
+ * as well, along with skipping .git directories.
+ * <p>
+ * Immutable so it can be used by all the threads of a {@link DirectoryWalker}.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+public final class IgnoreRules
+{
+	private static final String GIT_IGNORE = ".gitignore";
+	private static final String GIT_DIR = ".git";
+
+	private final List<String> includes;
+	private final List<String> excludes;
+	private final boolean gitIgnore;
+	private final List<GlobRule> includeRules;
+	private final List<GlobRule> excludeRules;
+	private final static Logger log = Logger.getLogger(IgnoreRules.class.getName());
+
+	/**
+	 * The rules of the .gitignore files in a directory and those above it
+	 */
+	static final class GitIgnores
+	{
+		private final GitIgnores parent;
+		/** path of the directory holding the .gitignore */
+		private final String base;
+		private final List<GlobRule> rules;
+
+		private GitIgnores(GitIgnores parent, String base, List<GlobRule> rules)
+		{
+			this.parent = parent;
+			this.base = base;
+			this.rules = rules;
+		}
+
+		/**
+		 * Rules in deeper directories and later lines override those before them
+		 * @return true if ignored, false if a negated rule matched last, null if no rule matched
+		 */
+		private Boolean match(File f, boolean directory)
+		{
+			Boolean ignored = (parent == null ? null : parent.match(f, directory));
+			String path = getRelativePath(base, f);
+			for (GlobRule rule : rules)
+			{
+				if (rule.matches(path, f.getName(), directory)) {
+					ignored = !rule.isNegated();
+				}
+			}
+			return ignored;
+		}
+	}
+
+	/**
+	 * @param includes globs of the files to add; all files are added if empty
+	 * @param excludes globs of the files and directories to leave out
+	 * @param gitIgnore true to also leave out the files ignored by .gitignore files
+	 */
+	public IgnoreRules(List<String> includes, List<String> excludes, boolean gitIgnore)
+	{
+		this.includes = Collections.unmodifiableList(new ArrayList<String>(includes));
+		this.excludes = Collections.unmodifiableList(new ArrayList<String>(excludes));
+		this.gitIgnore = gitIgnore;
+		includeRules = parse(includes);
+		excludeRules = parse(excludes);
+	}
+
+	private static List<GlobRule> parse(List<String> globs)
+	{
+		List<GlobRule> rules = new ArrayList<GlobRule>(globs.size());
+		GlobRule rule;
+		for (String glob : globs)
+		{
+			if ((rule = GlobRule.parse(glob)) != null) {
+				rules.add(rule);
+			}
+		}
+		return rules;
+	}
+
+	public List<String> getIncludes()
+	{
+		return includes;
+	}
+
+	public List<String> getExcludes()
+	{
+		return excludes;
+	}
+
+	/**
+	 * @return true if the .gitignore files found in the tree are honoured
+	 */
+	public boolean isGitIgnore()
+	{
+		return gitIgnore;
+	}
+
+	/**
+	 * @return true if no files are left out
+	 */
+	public boolean isEmpty()
+	{
+		return includeRules.isEmpty() && excludeRules.isEmpty() && !gitIgnore;
+	}
+
+	/**
+	 * Read the .gitignore of a directory if there is one and they are being honoured
+	 * @param parent the rules of the directories above
+	 * @param dir
+	 * @param entries the contents of the directory, so the .gitignore needn't be looked for separately
+	 * @return the rules that apply within the directory
+	 */
+	GitIgnores enterDirectory(GitIgnores parent, File dir, File[] entries)
+	{
+		if (!gitIgnore) {
+			return parent;
+		}
+
+		for (File entry : entries)
+		{
+			if (entry.getName().equals(GIT_IGNORE) && entry.isFile())
+			{
+				List<GlobRule> rules = readGitIgnore(entry);
+				return (rules.isEmpty() ? parent : new GitIgnores(parent, dir.getPath(), rules));
+			}
+		}
+		return parent;
+	}
+
+	private static List<GlobRule> readGitIgnore(File f)
+	{
+		List<GlobRule> rules = new ArrayList<GlobRule>();
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(f), "UTF-8"));
+			String line;
+			GlobRule rule;
+			while ((line = reader.readLine()) != null)
+			{
+				if ((rule = GlobRule.parse(line)) != null) {
+					rules.add(rule);
+				}
+			}
+		}
+		catch (IOException ioex)
+		{
+			log.log(Level.FINE, "Cannot read "+f, ioex);
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try {
+					reader.close();
+				} catch (IOException ioex) {
+					log.log(Level.FINE, "Cannot close "+f, ioex);
+				}
+			}
+		}
+		return rules;
+	}
+
+	/**
+	 * @param root path of the directory being added
+	 * @param f a file or directory within it
+	 * @param directory true if f is a directory
+	 * @param gitIgnores the rules of the .gitignore files that apply, or null
+	 * @return true if f should be left out; a directory that is left out isn't walked
+	 */
+	boolean isExcluded(String root, File f, boolean directory, GitIgnores gitIgnores)
+	{
+		if (gitIgnore && directory && f.getName().equals(GIT_DIR)) {
+			return true;
+		}
+
+		String path = getRelativePath(root, f);
+		if (matches(excludeRules, path, f.getName(), directory)) {
+			return true;
+		}
+		if (gitIgnores != null && Boolean.TRUE.equals(gitIgnores.match(f, directory))) {
+			return true;
+		}
+		return !directory && !includeRules.isEmpty() && !matches(includeRules, path, f.getName(), false);
+	}
+
+	/**
+	 * @return true if the last rule to match isn't negated
+	 */
+	private static boolean matches(List<GlobRule> rules, String path, String name, boolean directory)
+	{
+		boolean matched = false;
+		for (GlobRule rule : rules)
+		{
+			if (rule.matches(path, name, directory)) {
+				matched = !rule.isNegated();
+			}
+		}
+		return matched;
+	}
+
+	/**
+	 * @return the path of f relative to the base directory, separated by /
+	 */
+	private static String getRelativePath(String base, File f)
+	{
+		String path = f.getPath();
+		int start = base.length();
+		if (start > 0 && start < path.length() && path.charAt(start) == File.separatorChar) {
+			start++;
+		}
+		path = path.substring(Math.min(start, path.length()));
+		return (File.separatorChar == '/' ? path : path.replace(File.separatorChar, '/'));
+	}
+}
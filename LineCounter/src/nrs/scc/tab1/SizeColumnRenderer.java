@@ -63,27 +63,47 @@ public class SizeColumnRenderer extends DefaultTableCellRenderer
 		
 		if (value != null)
 		{
-			Long l = (Long)value;
-			double dv;
-			String suffix;
-			if (l < KB)
-			{
-				suffix = BYTES_LABEL;
-				dv = l;
-			}
-			else if (l < MB)
-			{
-				suffix = KB_LABEL;
-				dv = (double)l/1024;
-			}
-			else
-			{
-				suffix = MB_LABEL;
-				dv = (double)l / MB;
-			}
-			
-			comp.setText(formatter.format(dv)+suffix);
+			comp.setText(format((Long)value, BYTES_LABEL, KB_LABEL, MB_LABEL));
 		}
 		return comp;
 	}
+
+	/**
+	 * Format a size in bytes, KB or MB. Params are I18N labels.
+	 * @param size size in bytes
+	 * @param bytesLabel
+	 * @param kbLabel
+	 * @param mbLabel
+	 * @return the formatted size
+	 */
+	public static String formatSize(long size, String bytesLabel, String kbLabel, String mbLabel)
+	{
+		return format(size, " "+bytesLabel, " "+kbLabel, " "+mbLabel);
+	}
+
+	private static String format(long l, String bytesSuffix, String kbSuffix, String mbSuffix)
+	{
+		double dv;
+		String suffix;
+		if (l < KB)
+		{
+			suffix = bytesSuffix;
+			dv = l;
+		}
+		else if (l < MB)
+		{
+			suffix = kbSuffix;
+			dv = (double)l/1024;
+		}
+		else
+		{
+			suffix = mbSuffix;
+			dv = (double)l / MB;
+		}
+
+		synchronized (formatter)
+		{
+			return formatter.format(dv)+suffix;
+		}
+	}
 }
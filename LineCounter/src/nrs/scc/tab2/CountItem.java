@@ -34,6 +34,9 @@ public class CountItem implements TreeNode, Cloneable
 	public Pattern regExp;
 	private FileType parentFileType;
 	private boolean selected = false;
+	// regExp can be replaced when the counter is edited so remember which pattern was analysed
+	private Pattern analysedRegExp;
+	private LiteralPrefix literalPrefix;
 
 	public CountItem(FileType fileType, String name, Pattern regExp)
 	{
@@ -43,6 +46,21 @@ public class CountItem implements TreeNode, Cloneable
 		parentFileType = fileType;
 		this.name = name;
 		this.regExp = regExp;
+		getLiteralPrefix();
+	}
+
+	/**
+	 * Get the literal text every match of the regular expression starts with
+	 * @return LiteralPrefix or null if there isn't one
+	 */
+	public synchronized LiteralPrefix getLiteralPrefix()
+	{
+		if (analysedRegExp != regExp)
+		{
+			literalPrefix = LiteralPrefix.analyse(regExp);
+			analysedRegExp = regExp;
+		}
+		return literalPrefix;
 	}
 	
 	public void setFileType(FileType fileType)
@@ -69,12 +69,17 @@ public class FileTypes
 	}
 
 	/**
-	 * Get regexp patterns for the specified file type that have been selected by the user
+	 * Check if the specified file is one of the defined file types, either by its
+	 * extension or by its full name
 	 * @param details FileDetails
-	 * @param unknownFilesFileType what to treat unknown files as; may be null
-	 * @return a (possibly empty) list of patterns
+	 * @return true if defined; false if it would only be counted as the unknown files type
 	 */
-	public List<CountItem> getSelectedPatterns(FileDetails details, String unknownFilesFileType)
+	public boolean isKnownFile(FileDetails details)
+	{
+		return (getFileType(details) != null);
+	}
+
+	private FileType getFileType(FileDetails details)
 	{
 		// check file extension first
 		FileType ft = fileTypePatternMap.get(details.getFileExtension());
@@ -82,6 +87,18 @@ public class FileTypes
 		if (ft == null) {
 			ft = fileTypePatternMap.get(details.getName().toLowerCase());
 		}
+		return ft;
+	}
+
+	/**
+	 * Get regexp patterns for the specified file type that have been selected by the user
+	 * @param details FileDetails
+	 * @param unknownFilesFileType what to treat unknown files as; may be null
+	 * @return a (possibly empty) list of patterns
+	 */
+	public List<CountItem> getSelectedPatterns(FileDetails details, String unknownFilesFileType)
+	{
+		FileType ft = getFileType(details);
 		// check if an override has been set
 		if (ft == null && unknownFilesFileType != null)
 		{
@@ -29,6 +29,7 @@ import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import javax.swing.tree.TreeNode;
 import nrs.scc.tab1.FileSelectionTableModel;
+import nrs.scc.tab1.IgnoreRules;
 import org.xml.sax.Attributes;
 import org.xml.sax.Locator;
 import org.xml.sax.SAXException;
@@ -57,6 +58,9 @@ public class FileTypesSAXParser extends DefaultHandler
 	private FileSelectionTableModel fsTM;
 	private List<File> fileSelection;
 	private int missingFilesCount; // number of files in a profile that no longer exist
+	private List<String> includes, excludes;
+	private boolean gitIgnore;
+	private IgnoreRules ignoreRules;
 
 	static final String FILE_TYPES = "FileTypes";
 	static final String FILE_TYPE = "FileType";
@@ -66,12 +70,16 @@ public class FileTypesSAXParser extends DefaultHandler
 	static final String COUNT_ITEMS = "CountItems";
 	static final String FILE = "file";
 	static final String FILES = "Files";
+	static final String IGNORE_RULES = "IgnoreRules";
+	static final String INCLUDE = "include";
+	static final String EXCLUDE = "exclude";
 	static final String ATTR_NAME = "name";
 	static final String ATTR_ID = "id";
 	static final String ATTR_REF = "ref";
 	static final String ATTR_SELECTED = "selected";
 	static final String ATTR_TYPE = "type";
 	static final String ATTR_VERSION = "version";
+	static final String ATTR_GIT_IGNORE = "gitignore";
 
 	// options
 	static final String ATTR_CASE_INSENSITIVE = "ci";
@@ -187,6 +195,18 @@ public class FileTypesSAXParser extends DefaultHandler
 				missingFilesCount++;
 			}
 		}
+		else if (qName.equals(INCLUDE))
+		{
+			includes.add(sb.toString());
+		}
+		else if (qName.equals(EXCLUDE))
+		{
+			excludes.add(sb.toString());
+		}
+		else if (qName.equals(IGNORE_RULES))
+		{
+			ignoreRules = new IgnoreRules(includes, excludes, gitIgnore);
+		}
 		else if (qName.equals(FILES))
 		{
 			if (fsTM != null) {
@@ -224,12 +244,26 @@ public class FileTypesSAXParser extends DefaultHandler
 
 			selected = Boolean.valueOf(attributes.getValue(ATTR_SELECTED));
 		}
+		else if (qName.equals(IGNORE_RULES))
+		{
+			includes = new ArrayList<String>();
+			excludes = new ArrayList<String>();
+			gitIgnore = Boolean.valueOf(attributes.getValue(ATTR_GIT_IGNORE));
+		}
 		else if (qName.equals(FILES))
 		{
 			fileSelection = new ArrayList<File>();
 		}
 	}
 
+	/**
+	 * @return the rules for adding directories held in a profile, or null if it has none
+	 */
+	public IgnoreRules getIgnoreRules()
+	{
+		return ignoreRules;
+	}
+
 	public int getMissingFilesCount()
 	{
 		return missingFilesCount;
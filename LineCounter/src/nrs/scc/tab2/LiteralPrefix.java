@@ -0,0 +1,218 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab2;
+
+import java.util.regex.Pattern;
+
+/**
+ * The literal text every match of a regular expression has to start with, such as
+ * the // of a single line comment or the &lt;!-- of an XML comment. A match can then
+ * only start at an occurrence of the literal, or for a pattern starting with ^[ \t]*
+ * at the start of the blanks in front of it, so the text can be searched for the
+ * literal and the pattern only tried at those positions.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+public final class LiteralPrefix
+{
+	private static final String BLANKS = "[ \\t]*";
+	private static final String BLANKS_ALT = "[\\t ]*";
+	private static final String META_CHARS = "\\^$.|?*+()[]{}";
+
+	private final String literal;
+	private final boolean leadingBlanks;
+
+	private LiteralPrefix(String literal, boolean leadingBlanks)
+	{
+		this.literal = literal;
+		this.leadingBlanks = leadingBlanks;
+	}
+
+	/**
+	 * Find the literal prefix of a pattern
+	 * @param p
+	 * @return the prefix or null if matches don't have to start with any literal text
+	 */
+	public static LiteralPrefix analyse(Pattern p)
+	{
+		int flags = p.flags();
+		if ((flags & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.CANON_EQ)) != 0) {
+			return null;
+		}
+
+		String regex = p.pattern();
+		if ((flags & Pattern.LITERAL) == Pattern.LITERAL) {
+			return (regex.length() == 0 ? null : new LiteralPrefix(regex, false));
+		}
+		if (hasTopLevelAlternation(regex)) {
+			return null;
+		}
+
+		int i = 0;
+		boolean leadingBlanks = false;
+		if (regex.startsWith("^"))
+		{
+			i++;
+			// only the start of a line can come before the blanks
+			if (regex.startsWith(BLANKS, i) || regex.startsWith(BLANKS_ALT, i))
+			{
+				i += BLANKS.length();
+				leadingBlanks = true;
+			}
+		}
+
+		StringBuilder sb = new StringBuilder();
+		char c;
+		while (i < regex.length())
+		{
+			c = regex.charAt(i);
+			if (c == '\\')
+			{
+				if (i+1 == regex.length()) {
+					break;
+				}
+				c = regex.charAt(i+1);
+				if (Character.isLetterOrDigit(c)) {
+					break; // a class, escape sequence, back reference or boundary
+				}
+				i += 2;
+			}
+			else if (META_CHARS.indexOf(c) != -1)
+			{
+				break;
+			}
+			else
+			{
+				i++;
+			}
+
+			if (i < regex.length() && "?*{".indexOf(regex.charAt(i)) != -1) {
+				break; // the char is optional or repeated
+			}
+			sb.append(c);
+			if (i < regex.length() && regex.charAt(i) == '+') {
+				break;
+			}
+		}
+
+		if (sb.length() == 0) {
+			return null;
+		}
+		return new LiteralPrefix(sb.toString(), leadingBlanks);
+	}
+
+	/**
+	 * Check for an | that isn't inside a group or a character class
+	 */
+	private static boolean hasTopLevelAlternation(String regex)
+	{
+		int depth = 0;
+		boolean inClass = false;
+		char c;
+		for (int i=0; i<regex.length(); i++)
+		{
+			c = regex.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (inClass) {
+				inClass = (c != ']');
+			} else if (c == '[') {
+				inClass = true;
+			} else if (c == '(') {
+				depth++;
+			} else if (c == ')') {
+				depth--;
+			} else if (c == '|' && depth == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the text every match starts with, after any leading blanks
+	 */
+	public String getLiteral()
+	{
+		return literal;
+	}
+
+	/**
+	 * @return true if the pattern starts with ^[ \t]* so a match starts at the first of
+	 * the blanks in front of the literal
+	 */
+	public boolean hasLeadingBlanks()
+	{
+		return leadingBlanks;
+	}
+
+	/**
+	 * Find the next occurrence of the literal
+	 * @param text the text to search
+	 * @param from offset to search from
+	 * @return offset of the literal or -1 if there are no more
+	 */
+	public int indexOf(CharSequence text, int from)
+	{
+		char first = literal.charAt(0);
+		int last = text.length() - literal.length();
+		int j;
+		for (int i=from; i<=last; i++)
+		{
+			if (text.charAt(i) != first) {
+				continue;
+			}
+			j = 1;
+			while (j < literal.length() && text.charAt(i+j) == literal.charAt(j)) {
+				j++;
+			}
+			if (j == literal.length()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check whether a match could start at an offset
+	 * @param text the text to check
+	 * @param pos offset the match would start at
+	 * @return false if the literal, after any leading blanks, doesn't occur at the offset
+	 */
+	public boolean isAt(CharSequence text, int pos)
+	{
+		int i = pos;
+		if (leadingBlanks)
+		{
+			while (i < text.length() && (text.charAt(i) == ' ' || text.charAt(i) == '\t')) {
+				i++;
+			}
+		}
+		if (i + literal.length() > text.length()) {
+			return false;
+		}
+		for (int j=0; j<literal.length(); j++)
+		{
+			if (text.charAt(i+j) != literal.charAt(j)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
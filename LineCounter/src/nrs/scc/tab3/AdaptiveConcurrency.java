@@ -0,0 +1,174 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.util.concurrent.Semaphore;
+import java.util.logging.Logger;
+
+/**
+ * Chooses how many FileCounters are active while files are being counted. More FileCounters
+ * are started than are active to begin with; each one takes a permit before claiming files
+ * and returns it once they are counted, so changing the number of permits grows or shrinks
+ * the active set.
+ * <p>
+ * Starting from the number of processors, the throughput of each interval is compared with
+ * the last. While it improves the number of permits keeps moving the same way, one at a time;
+ * when it falls the direction is reversed. An extra permit that makes no difference is taken
+ * away again, so the fewest FileCounters giving the best throughput are kept active.
+ * Throughput is measured in bytes counted per second with each file also counting as
+ * FILE_WEIGHT bytes, so that a run of small files, where the cost is opening them rather
+ * than reading them, still registers.
+ * <p>
+ * adjust() is only called from the thread running the FileCounterManager.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class AdaptiveConcurrency
+{
+	/** bytes each file counts as on top of its size */
+	static final long FILE_WEIGHT = 16 * 1024;
+	/** changes in throughput smaller than this fraction are treated as noise */
+	private static final double NOISE = 0.05;
+
+	/**
+	 * Exposes the ability to take permits away without waiting for them
+	 */
+	private static class ResizableSemaphore extends Semaphore
+	{
+		private static final long serialVersionUID = 1L;
+
+		ResizableSemaphore(int permits)
+		{
+			super(permits);
+		}
+
+		@Override
+		protected void reducePermits(int reduction)
+		{
+			super.reducePermits(reduction);
+		}
+	}
+
+	private final ResizableSemaphore permits;
+	private final int maxLimit;
+	private int limit;
+	private int direction = 1;
+	private double lastThroughput = -1;
+	private long lastTime;
+	private long lastFiles;
+	private long lastBytes;
+	private final static Logger log = Logger.getLogger(AdaptiveConcurrency.class.getName());
+
+	/**
+	 * @param initialLimit number of FileCounters active to begin with
+	 * @param maxLimit number of FileCounters that have been started
+	 */
+	AdaptiveConcurrency(int initialLimit, int maxLimit)
+	{
+		this.maxLimit = maxLimit;
+		limit = Math.max(1, Math.min(initialLimit, maxLimit));
+		permits = new ResizableSemaphore(limit);
+		lastTime = System.nanoTime();
+	}
+
+	/**
+	 * Wait until the FileCounter may claim more files
+	 * @throws InterruptedException if the count is cancelled while waiting
+	 */
+	void acquire() throws InterruptedException
+	{
+		permits.acquire();
+	}
+
+	/**
+	 * The FileCounter has counted the files it claimed
+	 */
+	void release()
+	{
+		permits.release();
+	}
+
+	/**
+	 * Compare the throughput since the last call with the one before and move the limit
+	 * @param files number of files counted so far
+	 * @param bytes number of bytes counted so far
+	 */
+	void adjust(long files, long bytes)
+	{
+		long now = System.nanoTime();
+		long elapsed = now - lastTime;
+		if (elapsed <= 0) {
+			return;
+		}
+
+		double throughput = ((bytes - lastBytes) + (files - lastFiles) * FILE_WEIGHT) * 1e9 / elapsed;
+		lastTime = now;
+		lastFiles = files;
+		lastBytes = bytes;
+
+		if (lastThroughput >= 0)
+		{
+			if (throughput < lastThroughput * (1 - NOISE))
+			{
+				direction = -direction; // the last move made things worse
+			}
+			else if (throughput <= lastThroughput * (1 + NOISE))
+			{
+				lastThroughput = throughput;
+				if (direction > 0)
+				{
+					// the extra FileCounter didn't help so take it away again
+					direction = -1;
+					setLimit(limit - 1);
+				}
+				return;
+			}
+		}
+		lastThroughput = throughput;
+
+		if (limit + direction < 1 || limit + direction > maxLimit) {
+			direction = -direction;
+		}
+		setLimit(limit + direction);
+	}
+
+	private void setLimit(int newLimit)
+	{
+		if (newLimit < 1 || newLimit > maxLimit || newLimit == limit) {
+			return;
+		}
+
+		if (newLimit > limit) {
+			permits.release(newLimit - limit);
+		} else {
+			permits.reducePermits(limit - newLimit); // FileCounters drop out as they finish their files
+		}
+		log.fine("Active FileCounters changed from "+limit+" to "+newLimit);
+		limit = newLimit;
+	}
+
+	/**
+	 * @return the number of FileCounters currently allowed to be active
+	 */
+	int getLimit()
+	{
+		return limit;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Presents the bytes of a file as chars without decoding them, each byte becoming the
+ * char with the same value. For ASCII text in an ASCII compatible character set this is
+ * exactly what decoding would produce; any other byte is only guaranteed not to be a
+ * line terminator or blank.
+ * <p>
+ * Reused across files by a single FileCounter.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class AsciiCharSequence implements CharSequence
+{
+	private ByteBuffer bytes;
+	private int offset;
+	private int length;
+
+	/**
+	 * Present the remaining bytes of a buffer. The position of the buffer isn't changed.
+	 * @param bytes
+	 */
+	void setBytes(ByteBuffer bytes)
+	{
+		this.bytes = bytes;
+		offset = bytes.position();
+		length = bytes.remaining();
+	}
+
+	/**
+	 * Release the buffer so it can be unmapped
+	 */
+	void clear()
+	{
+		bytes = null;
+		offset = length = 0;
+	}
+
+	@Override
+	public int length()
+	{
+		return length;
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (index < 0 || index >= length) {
+			throw new IndexOutOfBoundsException(String.valueOf(index));
+		}
+		return (char)(bytes.get(offset + index) & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException(start+", "+end);
+		}
+		ByteBuffer sub = bytes.duplicate();
+		sub.limit(offset + end);
+		sub.position(offset + start);
+
+		AsciiCharSequence seq = new AsciiCharSequence();
+		seq.setBytes(sub);
+		return seq;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder sb = new StringBuilder(length);
+		for (int i=0; i<length; i++) {
+			sb.append((char)(bytes.get(offset + i) & 0xFF));
+		}
+		return sb.toString();
+	}
+}
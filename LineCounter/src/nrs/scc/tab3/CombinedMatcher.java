@@ -0,0 +1,473 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import nrs.scc.tab2.CountItem;
+import nrs.scc.tab2.LiteralPrefix;
+
+/**
+ * Finds the matches of every CountItem of a {@link CombinedPattern} in a single pass.
+ * <p>
+ * The combined alternation stops at every offset where at least one CountItem matches.
+ * At each of those offsets every other CountItem is tried in place, so the spans reported
+ * are exactly those that running each pattern's find() over the whole text would give,
+ * including matches that overlap. When the alternation stops only to match a CountItem
+ * again inside its previous match, the rest of that match is stepped over trying the
+ * other CountItems in place, so a long match isn't rematched at each of its offsets.
+ * CountItems with a {@link LiteralPrefix} are left out of the alternation; the pass also
+ * stops where their literals occur, and they are only tried in place where their literal
+ * is present.
+ * <p>
+ * Each CountItem is given a time limit per file. The patterns read the text through an
+ * {@link InterruptibleCharSequence} so one that runs over is stopped with a
+ * {@link MatchTimeoutException} and can be disabled for the rest of the file. Time spent
+ * in the combined alternation is counted against the alternation as a whole; if that
+ * runs over the combined CountItems are matched one at a time instead.
+ * <p>
+ * Not thread safe; reused across files by a single FileCounter.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class CombinedMatcher
+{
+	/**
+	 * Receives the span of every match
+	 */
+	interface MatchListener
+	{
+		/**
+		 * @param start start offset of the match
+		 * @param end end offset of the match, exclusive
+		 */
+		void match(int start, int end);
+	}
+
+	/** index given to the combined alternation when it runs over its time limit */
+	static final int COMBINED = -1;
+
+	private final CombinedPattern pattern;
+	private final Matcher[] matchers;
+	private final Matcher combinedMatcher;
+	/** offset each combined CountItem can next match from, as find() would continue */
+	private final int[] nextStart;
+	/** offset each combined CountItem's literal prefix next occurs at in the current text */
+	private final int[] nextLiteral;
+	private final InterruptibleCharSequence interruptibleText = new InterruptibleCharSequence();
+
+	// time limits for the current file, all in nanoseconds
+	private long timeLimit = Long.MAX_VALUE / 2; // no limit until a file is started
+	private final long[] timeUsed;
+	private long combinedTimeUsed;
+	/** CountItems that ran over their time limit on the current file */
+	private final boolean[] disabled;
+	private boolean combinedDisabled;
+
+	CombinedMatcher(CombinedPattern pattern)
+	{
+		this.pattern = pattern;
+		Pattern[] patterns = pattern.getPatterns();
+		matchers = new Matcher[patterns.length];
+		nextStart = new int[patterns.length];
+		nextLiteral = new int[patterns.length];
+		timeUsed = new long[patterns.length];
+		disabled = new boolean[patterns.length];
+		for (int i=0; i<patterns.length; i++)
+		{
+			matchers[i] = patterns[i].matcher("");
+			if (pattern.isCombined(i) || pattern.getLiteralPrefix(i) != null)
+			{
+				// the region is only used to try a pattern in place; ^, $ and look-behinds
+				// must still see the surrounding text
+				matchers[i].useTransparentBounds(true);
+				matchers[i].useAnchoringBounds(false);
+			}
+		}
+		combinedMatcher = (pattern.getCombined() == null ? null : pattern.getCombined().matcher(""));
+	}
+
+	/**
+	 * Report the span of every match of every CountItem in the text
+	 * @param text the text to search
+	 * @param listener receives the matches
+	 */
+	void findAll(CharSequence text, MatchListener listener)
+	{
+		reset();
+		find(text, 0, text.length()+1, listener);
+	}
+
+	/**
+	 * Start matching a new file, enabling every CountItem again
+	 * @param timeLimit nanoseconds each CountItem may spend matching the file
+	 */
+	void startFile(long timeLimit)
+	{
+		this.timeLimit = timeLimit;
+		for (int i=0; i<disabled.length; i++) {
+			disabled[i] = false;
+		}
+		combinedDisabled = false;
+	}
+
+	/**
+	 * Stop matching a CountItem that has run over its time limit until the next file is started
+	 * @param index index of the CountItem, or COMBINED to match the combined CountItems one at a time
+	 * @return the CountItem disabled, or null for COMBINED
+	 */
+	CountItem disable(int index)
+	{
+		if (index == COMBINED)
+		{
+			combinedDisabled = true;
+			return null;
+		}
+		disabled[index] = true;
+		return pattern.getCountItem(index);
+	}
+
+	/**
+	 * Start matching the text of the current file from the beginning
+	 */
+	void reset()
+	{
+		for (int i=0; i<nextStart.length; i++)
+		{
+			nextStart[i] = 0;
+			timeUsed[i] = 0;
+		}
+		combinedTimeUsed = 0;
+	}
+
+	/**
+	 * Start matching the text of the current file part way through, carrying on from
+	 * matches found by another CombinedMatcher
+	 * @param nextStarts offset each CountItem can next match from, as returned by {@link #getNextStarts()}
+	 */
+	void reset(int[] nextStarts)
+	{
+		reset();
+		System.arraycopy(nextStarts, 0, nextStart, 0, nextStart.length);
+	}
+
+	/**
+	 * @return the offset each CountItem can next match from, as find() would continue;
+	 * an offset beyond the text matched so far means a match ran on past it
+	 */
+	int[] getNextStarts()
+	{
+		return nextStart.clone();
+	}
+
+	/**
+	 * @return true if the CountItem is matched as part of the combined alternation
+	 */
+	private boolean isCombined(int index)
+	{
+		return !combinedDisabled && pattern.isCombined(index);
+	}
+
+	/**
+	 * Report the matches that start within part of the text, carrying on from the
+	 * matches found by the previous call. Matches may extend beyond the limit.
+	 * @param text the text to search
+	 * @param from offset to start searching from; text before this is only context
+	 * @param limit only matches starting before this offset are reported
+	 * @param listener receives the matches
+	 * @throws MatchTimeoutException if a CountItem runs over its time limit
+	 */
+	void find(CharSequence text, int from, int limit, MatchListener listener)
+	{
+		interruptibleText.setText(text);
+		long started;
+		try
+		{
+			for (int i=0; i<matchers.length; i++)
+			{
+				matchers[i].reset(interruptibleText);
+				if (isCombined(i) || disabled[i]) {
+					continue;
+				}
+
+				started = System.nanoTime();
+				interruptibleText.setDeadline(i, started + timeLimit - timeUsed[i]);
+				try
+				{
+					if (pattern.getLiteralPrefix(i) != null) {
+						findLiteral(i, text, from, limit, listener);
+					} else {
+						findSeparate(i, from, limit, listener);
+					}
+				}
+				finally
+				{
+					timeUsed[i] += System.nanoTime() - started;
+				}
+			}
+
+			if (pattern.isCombining() && !combinedDisabled)
+			{
+				started = System.nanoTime();
+				interruptibleText.setDeadline(COMBINED, started + timeLimit - combinedTimeUsed);
+				try
+				{
+					findCombined(text, from, limit, listener);
+				}
+				finally
+				{
+					combinedTimeUsed += System.nanoTime() - started;
+				}
+			}
+		}
+		finally
+		{
+			interruptibleText.clear();
+		}
+	}
+
+	/**
+	 * Report the matches of a CountItem that isn't part of the combined alternation
+	 */
+	private void findSeparate(int index, int from, int limit, MatchListener listener)
+	{
+		Matcher matcher = matchers[index];
+		int length = interruptibleText.length();
+		int pos = Math.max(from, nextStart[index]);
+		int start, end;
+		while (pos <= length && matcher.find(pos) && matcher.start() < limit)
+		{
+			start = matcher.start();
+			end = matcher.end();
+			listener.match(start, end);
+			nextStart[index] = pos = (end == start ? end+1 : end);
+		}
+	}
+
+	/**
+	 * Report the matches of the combined CountItems. The pass moves through the text
+	 * stopping where the alternation matches or a literal prefix occurs, and at each
+	 * stop tries every other combined CountItem in place.
+	 */
+	private void findCombined(CharSequence text, int from, int limit, MatchListener listener)
+	{
+		int length = text.length();
+		int pos = from;
+		int next, winner, i;
+		// where the alternation next matches, or is next to be tried in place
+		int alternation = (combinedMatcher == null ? Integer.MAX_VALUE : -1);
+		boolean stepping = false;
+		// offset up to which a match of the alternation already reported may still be running
+		int blockedUntil = 0;
+		for (i=0; i<matchers.length; i++)
+		{
+			nextLiteral[i] = -1;
+			if (pattern.getGroup(i) != 0 && !disabled[i]) {
+				blockedUntil = Math.max(blockedUntil, nextStart[i]);
+			}
+		}
+
+		if (combinedMatcher != null) {
+			combinedMatcher.reset(interruptibleText);
+		}
+		while (true)
+		{
+			next = Integer.MAX_VALUE;
+			for (i=0; i<matchers.length; i++)
+			{
+				if (!pattern.isCombined(i) || disabled[i] || pattern.getLiteralPrefix(i) == null) {
+					continue;
+				}
+				if (nextLiteral[i] < Math.max(pos, nextStart[i])) {
+					nextLiteral[i] = findLiteralStart(i, text, Math.max(pos, nextStart[i]));
+				}
+				next = Math.min(next, nextLiteral[i]);
+			}
+
+			if (alternation < pos)
+			{
+				if (stepping && pos < blockedUntil) {
+					alternation = pos;
+				} else {
+					stepping = false;
+					alternation = (pos <= length && combinedMatcher.find(pos) ? combinedMatcher.start() : Integer.MAX_VALUE);
+				}
+			}
+			next = Math.min(next, alternation);
+			if (next >= limit || next > length) {
+				break;
+			}
+
+			winner = -1;
+			if (next == alternation && !stepping)
+			{
+				winner = getWinner();
+				// if the alternative that matched is one whose last match covers this offset the
+				// alternation would keep matching it again at every offset to the end of that
+				// match, so step over the rest of it trying the CountItems in place
+				stepping = (disabled[winner] || nextStart[winner] > next);
+			}
+			blockedUntil = Math.max(blockedUntil, matchInPlace(next, winner, listener));
+			pos = next+1;
+		}
+	}
+
+	/**
+	 * Find where the next match of a CountItem could start from its literal prefix
+	 * @return offset of the start of the match, or Integer.MAX_VALUE if it can't match again
+	 */
+	private int findLiteralStart(int index, CharSequence text, int from)
+	{
+		LiteralPrefix prefix = pattern.getLiteralPrefix(index);
+		int search = from;
+		int literal, start;
+		while ((literal = prefix.indexOf(text, search)) != -1)
+		{
+			start = literal;
+			if (prefix.hasLeadingBlanks())
+			{
+				// the match has to start at the beginning of the line
+				while (start > 0 && isBlank(text.charAt(start-1))) {
+					start--;
+				}
+			}
+			if (start >= from) {
+				return start;
+			}
+			search = literal+1;
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * @return index of the CountItem whose alternative the combined matcher matched
+	 */
+	private int getWinner()
+	{
+		for (int i=0; i<matchers.length; i++)
+		{
+			if (pattern.getGroup(i) != 0 && combinedMatcher.start(pattern.getGroup(i)) != -1) {
+				return i;
+			}
+		}
+		throw new IllegalStateException("No alternative matched");
+	}
+
+	/**
+	 * Report the matches of the combined CountItems that start at an offset
+	 * @param start offset to try the CountItems at
+	 * @param winner index of the CountItem the alternation matched at the offset, or -1
+	 * @return the furthest offset a CountItem of the alternation can next match from
+	 */
+	private int matchInPlace(int start, int winner, MatchListener listener)
+	{
+		int length = interruptibleText.length();
+		int furthest = start;
+		int end;
+		LiteralPrefix prefix;
+		Matcher matcher;
+		for (int i=0; i<matchers.length; i++)
+		{
+			if (!pattern.isCombined(i) || disabled[i] || nextStart[i] > start) {
+				continue;
+			}
+
+			if (i == winner)
+			{
+				end = combinedMatcher.end(pattern.getGroup(i));
+			}
+			else
+			{
+				prefix = pattern.getLiteralPrefix(i);
+				if (prefix != null && !prefix.isAt(interruptibleText, start)) {
+					continue;
+				}
+				matcher = matchers[i];
+				matcher.region(start, length);
+				if (!matcher.lookingAt()) {
+					continue;
+				}
+				end = matcher.end();
+			}
+
+			listener.match(start, end);
+			nextStart[i] = (end == start ? end+1 : end);
+			if (pattern.getGroup(i) != 0) {
+				furthest = Math.max(furthest, nextStart[i]);
+			}
+		}
+		return furthest;
+	}
+
+	/**
+	 * Report the matches of a CountItem, only trying its pattern where its literal prefix occurs
+	 */
+	private void findLiteral(int index, CharSequence text, int from, int limit, MatchListener listener)
+	{
+		LiteralPrefix prefix = pattern.getLiteralPrefix(index);
+		Matcher matcher = matchers[index];
+		int length = text.length();
+		int pos = Math.max(from, nextStart[index]);
+		int search = pos;
+		int literal, start, end;
+		while ((literal = prefix.indexOf(text, search)) != -1)
+		{
+			search = literal+1;
+			start = literal;
+			if (prefix.hasLeadingBlanks())
+			{
+				// the match has to start at the beginning of the line
+				while (start > 0 && isBlank(text.charAt(start-1))) {
+					start--;
+				}
+			}
+			if (start < pos) {
+				continue; // inside the last match
+			}
+			if (start >= limit) {
+				break;
+			}
+
+			matcher.region(start, length);
+			if (matcher.lookingAt())
+			{
+				end = matcher.end();
+				listener.match(start, end);
+				nextStart[index] = pos = (end == start ? end+1 : end);
+				search = Math.max(search, pos);
+			}
+		}
+	}
+
+	private static boolean isBlank(char c)
+	{
+		return c == ' ' || c == '\t';
+	}
+
+	/**
+	 * Move the offsets held between calls when the text is shifted to the left
+	 * @param offset number of chars the text has moved by
+	 */
+	void shift(int offset)
+	{
+		for (int i=0; i<nextStart.length; i++) {
+			nextStart[i] = Math.max(0, nextStart[i] - offset);
+		}
+	}
+}
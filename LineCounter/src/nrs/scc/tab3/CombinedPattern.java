@@ -0,0 +1,282 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import nrs.scc.tab2.CountItem;
+import nrs.scc.tab2.LiteralPrefix;
+
+/**
+ * The selected CountItems of a file type compiled into a single alternation so
+ * that the text only has to be scanned once whatever the number of counters.
+ * Patterns that can't safely be embedded in an alternation (back references,
+ * canonical equivalence or quoted sections) are kept separate and scanned on their own.
+ * Patterns with a {@link LiteralPrefix} are part of the same pass but are left out of
+ * the alternation, as the pass only needs to try them where their literal occurs.
+ * <p>
+ * Immutable so it can be shared between FileCounters; each thread obtains its own
+ * {@link CombinedMatcher}.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class CombinedPattern
+{
+	private final CountItem[] countItems;
+	private final Pattern[] patterns;
+	private final LiteralPrefix[] prefixes;
+	private final boolean[] combinable;
+	private final int[] groups;
+	private final Pattern combined;
+	private final boolean combining;
+	private final static Logger log = Logger.getLogger(CombinedPattern.class.getName());
+
+	/**
+	 * Compile the patterns
+	 * @param countItems the selected CountItems; may be empty
+	 */
+	CombinedPattern(List<CountItem> countItems)
+	{
+		int size = countItems.size();
+		this.countItems = countItems.toArray(new CountItem[size]);
+		patterns = new Pattern[size];
+		prefixes = new LiteralPrefix[size];
+		combinable = new boolean[size];
+		groups = new int[size];
+
+		int combinableCount = 0;
+		int alternatives = 0;
+		for (int i=0; i<size; i++)
+		{
+			patterns[i] = countItems.get(i).regExp;
+			prefixes[i] = countItems.get(i).getLiteralPrefix();
+			combinable[i] = isCombinable(patterns[i]);
+			if (combinable[i])
+			{
+				combinableCount++;
+				if (prefixes[i] == null) {
+					alternatives++;
+				}
+			}
+		}
+
+		Pattern p = null;
+		if (combinableCount > 1 && alternatives > 0)
+		{
+			p = compileCombined();
+			if (p == null) {
+				combinableCount = 0;
+			}
+		}
+		combined = p;
+		combining = (combinableCount > 1);
+		if (!combining)
+		{
+			for (int i=0; i<size; i++) {
+				combinable[i] = false;
+			}
+		}
+	}
+
+	/**
+	 * Build the alternation with each pattern in its own capturing group so the
+	 * alternative that matched can be identified
+	 * @return the combined pattern or null if it couldn't be compiled
+	 */
+	private Pattern compileCombined()
+	{
+		StringBuilder sb = new StringBuilder();
+		int group = 1;
+		for (int i=0; i<patterns.length; i++)
+		{
+			if (!combinable[i] || prefixes[i] != null) {
+				continue;
+			}
+
+			if (sb.length() > 0) {
+				sb.append('|');
+			}
+
+			groups[i] = group;
+			group += patterns[i].matcher("").groupCount() + 1;
+
+			int flags = patterns[i].flags();
+			sb.append("((?");
+			sb.append(getInlineFlags(flags));
+			sb.append(':');
+			if ((flags & Pattern.LITERAL) == Pattern.LITERAL) {
+				sb.append(Pattern.quote(patterns[i].pattern()));
+			} else {
+				sb.append(patterns[i].pattern());
+			}
+			if ((flags & Pattern.COMMENTS) == Pattern.COMMENTS) {
+				sb.append('\n'); // terminate any trailing comment
+			}
+			sb.append("))");
+		}
+
+		try
+		{
+			Pattern p = Pattern.compile(sb.toString());
+			if (p.matcher("").groupCount() == group-1) {
+				return p;
+			}
+			log.warning("Unexpected group count combining patterns "+sb);
+		}
+		catch (PatternSyntaxException psex)
+		{
+			log.log(Level.WARNING, "Cannot combine patterns "+sb, psex);
+		}
+		return null;
+	}
+
+	/**
+	 * Check whether a pattern behaves the same when embedded in an alternation
+	 * @param p
+	 * @return true if it can be combined
+	 */
+	private static boolean isCombinable(Pattern p)
+	{
+		if ((p.flags() & Pattern.CANON_EQ) == Pattern.CANON_EQ) {
+			return false; // no inline equivalent
+		}
+		if ((p.flags() & Pattern.LITERAL) == Pattern.LITERAL) {
+			return true;
+		}
+
+		// back references would need renumbering and \Q may not be terminated
+		String regex = p.pattern();
+		char c;
+		for (int i=0; i<regex.length()-1; i++)
+		{
+			if (regex.charAt(i) == '\\')
+			{
+				c = regex.charAt(++i);
+				if ((c >= '1' && c <= '9') || c == 'k' || c == 'Q') {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static String getInlineFlags(int flags)
+	{
+		StringBuilder sb = new StringBuilder(6);
+		if ((flags & Pattern.CASE_INSENSITIVE) == Pattern.CASE_INSENSITIVE) {
+			sb.append('i');
+		}
+		if ((flags & Pattern.UNICODE_CASE) == Pattern.UNICODE_CASE) {
+			sb.append('u');
+		}
+		if ((flags & Pattern.UNIX_LINES) == Pattern.UNIX_LINES) {
+			sb.append('d');
+		}
+		if ((flags & Pattern.MULTILINE) == Pattern.MULTILINE) {
+			sb.append('m');
+		}
+		if ((flags & Pattern.DOTALL) == Pattern.DOTALL) {
+			sb.append('s');
+		}
+		if ((flags & Pattern.COMMENTS) == Pattern.COMMENTS) {
+			sb.append('x');
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Create a matcher for a single thread to use
+	 * @return CombinedMatcher
+	 */
+	CombinedMatcher matcher()
+	{
+		return new CombinedMatcher(this);
+	}
+
+	/**
+	 * @return true if there are no CountItems to match
+	 */
+	boolean isEmpty()
+	{
+		return patterns.length == 0;
+	}
+
+	Pattern[] getPatterns()
+	{
+		return patterns;
+	}
+
+	/**
+	 * @param index index of the CountItem
+	 * @return the CountItem
+	 */
+	CountItem getCountItem(int index)
+	{
+		return countItems[index];
+	}
+
+	/**
+	 * @return true if any CountItems are matched together in a single pass
+	 */
+	boolean isCombining()
+	{
+		return combining;
+	}
+
+	/**
+	 * @param index index of the CountItem
+	 * @return true if the pattern is matched in the single pass, either as part of
+	 * the alternation or from its literal prefix
+	 */
+	boolean isCombined(int index)
+	{
+		return combinable[index];
+	}
+
+	/**
+	 * @param index index of the CountItem
+	 * @return the literal text matches of the CountItem start with, or null
+	 */
+	LiteralPrefix getLiteralPrefix(int index)
+	{
+		return prefixes[index];
+	}
+
+	/**
+	 * @param index index of a combined CountItem
+	 * @return the capturing group holding the match of the CountItem, or 0 if it
+	 * isn't part of the alternation
+	 */
+	int getGroup(int index)
+	{
+		return groups[index];
+	}
+
+	/**
+	 * @return the alternation of the combined patterns without a literal prefix; null if
+	 * there are none or fewer than two patterns could be combined
+	 */
+	Pattern getCombined()
+	{
+		return combined;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+/**
+ * Looks at the first few KB of a file to decide whether it is worth counting before
+ * it is mapped and decoded. Binary files (images, jars etc.) are recognised by NUL
+ * bytes or a high proportion of control chars; generated files by a marker such as
+ * &#64;generated in their header, and minified files by a very long line.
+ * <p>
+ * Only files of unknown types that are being counted as some file type are sniffed;
+ * files of the defined types are taken to be source.
+ * <p>
+ * The sample is checked as bytes so it is only meaningful for ASCII compatible
+ * character sets; UTF-16 text, for instance, is full of NUL bytes.
+ * <p>
+ * Not thread safe; each FileCounter has its own.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class ContentSniffer
+{
+	/** Reasons given for skipping a file */
+	static final String BINARY = "binary";
+	static final String MINIFIED = "minified";
+	static final String GENERATED = "generated";
+
+	/** Number of bytes read from the start of each file */
+	static final int SAMPLE_SIZE = 8 * 1024;
+	/** A line at least this long in the sample marks the file as minified */
+	private static final int MAX_LINE_LENGTH = 4 * 1024;
+	/** Files with a higher percentage of control chars than this in the sample are binary */
+	private static final int MAX_CONTROL_PERCENT = 10;
+	private static final String[] GENERATED_MARKERS = {"@generated", "DO NOT EDIT", "<auto-generated"};
+	/** Markers are only looked for in this many lines at the start of the file */
+	private static final int HEADER_LINES = 30;
+
+	private final ByteBuffer sample = ByteBuffer.allocate(SAMPLE_SIZE);
+	private final static Logger log = Logger.getLogger(ContentSniffer.class.getName());
+
+	/**
+	 * Check whether a file should be skipped. The position of the channel isn't changed.
+	 * @param channel the open file
+	 * @param path the path of the file, for logging
+	 * @return BINARY, MINIFIED or GENERATED if the file should be skipped; null if it should be counted
+	 * @throws IOException if the file can't be read
+	 */
+	String getSkipReason(FileChannel channel, String path) throws IOException
+	{
+		sample.clear();
+		long position = 0;
+		int read;
+		while (sample.hasRemaining() && (read = channel.read(sample, position)) != -1) {
+			position += read;
+		}
+		sample.flip();
+
+		String reason = null;
+		if (isBinary()) {
+			reason = BINARY;
+		} else if (hasLongLine()) {
+			reason = MINIFIED;
+		} else if (hasGeneratedMarker()) {
+			reason = GENERATED;
+		}
+
+		if (reason != null) {
+			log.fine("Skipping "+reason+" file "+path);
+		}
+		return reason;
+	}
+
+	private boolean isBinary()
+	{
+		int length = sample.limit();
+		int controlChars = 0;
+		int b;
+		for (int i=0; i<length; i++)
+		{
+			b = sample.get(i) & 0xFF;
+			if (b == 0) {
+				return true;
+			}
+			if ((b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f' && b != 0x1B) || b == 0x7F) {
+				controlChars++;
+			}
+		}
+		return (controlChars * 100 > length * MAX_CONTROL_PERCENT);
+	}
+
+	private boolean hasLongLine()
+	{
+		int length = sample.limit();
+		int lineLength = 0;
+		byte b;
+		for (int i=0; i<length; i++)
+		{
+			b = sample.get(i);
+			if (b == '\n' || b == '\r')
+			{
+				lineLength = 0;
+			}
+			else if (++lineLength == MAX_LINE_LENGTH)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasGeneratedMarker()
+	{
+		int end = getHeaderEnd();
+		for (String marker : GENERATED_MARKERS)
+		{
+			if (indexOf(marker, end) != -1) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the offset of the end of the header lines in the sample
+	 */
+	private int getHeaderEnd()
+	{
+		int length = sample.limit();
+		int lines = 0;
+		for (int i=0; i<length; i++)
+		{
+			if (sample.get(i) == '\n' && ++lines == HEADER_LINES) {
+				return i;
+			}
+		}
+		return length;
+	}
+
+	/**
+	 * Find ASCII text in the sample
+	 * @param text
+	 * @param end the text has to end before this offset
+	 */
+	private int indexOf(String text, int end)
+	{
+		int last = end - text.length();
+		int j;
+		for (int i=0; i<=last; i++)
+		{
+			j = 0;
+			while (j < text.length() && sample.get(i+j) == text.charAt(j)) {
+				j++;
+			}
+			if (j == text.length()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
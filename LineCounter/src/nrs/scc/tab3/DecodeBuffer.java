@@ -0,0 +1,134 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+/**
+ * Decodes files into a CharBuffer that is reused from one file to the next instead of
+ * allocating a new one sized to each file.
+ * <p>
+ * The buffer grows to fit the largest file seen. So that one huge file doesn't keep the
+ * memory forever, the largest number of chars needed is tracked over every SHRINK_INTERVAL
+ * files and the buffer is dropped back to twice that if it is less than a quarter of
+ * the capacity.
+ * <p>
+ * Not thread safe; each FileCounter has its own.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class DecodeBuffer
+{
+	private static final int MIN_SIZE = 64 * 1024;
+	private static final int SHRINK_INTERVAL = 64;
+
+	private final CharsetDecoder decoder;
+	private CharBuffer buffer;
+	/** most chars needed by a file since the size was last checked */
+	private int highWaterMark;
+	private int filesDecoded;
+
+	DecodeBuffer(CharsetDecoder decoder)
+	{
+		this.decoder = decoder;
+	}
+
+	/**
+	 * Decode the remaining bytes of a buffer
+	 * @param in the bytes to decode, all of which are consumed
+	 * @return the decoded chars, only valid until the next call
+	 * @throws CharacterCodingException if the bytes can't be decoded
+	 */
+	CharBuffer decode(ByteBuffer in) throws CharacterCodingException
+	{
+		int expected = (int)Math.min(Integer.MAX_VALUE, (long)(in.remaining() * (double)decoder.averageCharsPerByte()) + 16);
+		CharBuffer out = getBuffer(expected);
+
+		decoder.reset();
+		CoderResult result;
+		while (true)
+		{
+			result = decoder.decode(in, out, true);
+			if (result.isUnderflow()) {
+				result = decoder.flush(out);
+			}
+			if (result.isUnderflow()) {
+				break;
+			}
+			if (result.isOverflow())
+			{
+				out = grow(out);
+			}
+			else
+			{
+				result.throwException();
+			}
+		}
+		out.flip();
+
+		checkSize(out.limit());
+		return out;
+	}
+
+	/**
+	 * Get the buffer, making sure it can hold at least the given number of chars
+	 */
+	private CharBuffer getBuffer(int size)
+	{
+		if (buffer == null || buffer.capacity() < size) {
+			buffer = CharBuffer.allocate(Math.max(size, MIN_SIZE));
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Double the size of the buffer keeping the chars decoded so far
+	 */
+	private CharBuffer grow(CharBuffer out)
+	{
+		int size = (out.capacity() > Integer.MAX_VALUE / 2 ? Integer.MAX_VALUE : out.capacity() * 2);
+		CharBuffer larger = CharBuffer.allocate(size);
+		out.flip();
+		larger.put(out);
+		buffer = larger;
+		return larger;
+	}
+
+	/**
+	 * Release the buffer if the recent files have needed far less than it holds
+	 */
+	private void checkSize(int used)
+	{
+		highWaterMark = Math.max(highWaterMark, used);
+		if (++filesDecoded < SHRINK_INTERVAL) {
+			return;
+		}
+
+		if (buffer.capacity() > MIN_SIZE && highWaterMark < buffer.capacity() / 4) {
+			buffer = CharBuffer.allocate(Math.max(highWaterMark * 2, MIN_SIZE));
+		}
+		highWaterMark = 0;
+		filesDecoded = 0;
+	}
+}
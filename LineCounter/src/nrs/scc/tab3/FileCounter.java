@@ -20,19 +20,23 @@ package nrs.scc.tab3;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import nrs.scc.tab2.CountItem;
 
 /**
@@ -43,37 +47,76 @@ import nrs.scc.tab2.CountItem;
 public class FileCounter implements Runnable
 {
 	private FileCounterManager fcManager;
-	private SummaryDetails summary = new SummaryDetails();
+	private final SummaryDetails summary;
+	/** the totals shown while counting; null if they aren't */
+	private final LiveTotals.Stripe liveTotals;
 	private Charset charset;
 	private CharsetDecoder decoder;
+	private final DecodeBuffer decodeBuffer;
+	/** lines can be scanned from the bytes of a file without decoding it */
+	private final boolean asciiCompatible;
+	private final AsciiCharSequence asciiText = new AsciiCharSequence();
+	private final ContentSniffer sniffer = new ContentSniffer();
 	private boolean countBlankLines = true;
 	private static final int LIST_TOTAL = 20;
 	private List<FileDetails> detailsList = new ArrayList<FileDetails>(LIST_TOTAL);
-	private boolean finished = false;
-	private NavigableSet<Group> matches = new TreeSet<Group>();
+	/** lines holding a blank run or a match, bit 0 being firstLine */
+	private BitSet matchedLines = new BitSet();
+	private int firstLine;
+	private LineScanner lineScanner = new LineScanner();
 	private final static Logger log = Logger.getLogger(FileCounter.class.getName());
 
 	public static final String NEW_LINE_PATTERN = "\n";
 	public static final String BLANK_LINE_PATTERN = "^\\s*$";
-	
-	private final Matcher NEW_LINE_MATCHER = Pattern.compile(NEW_LINE_PATTERN, Pattern.MULTILINE).matcher("");
-	private final Matcher BLANK_LINE_MATCHER = Pattern.compile(BLANK_LINE_PATTERN, Pattern.MULTILINE).matcher("");
 
-	private class Group implements Comparable<Group>
-	{
-		Integer start;
-		Integer end;
+	private Map<CombinedPattern, CombinedMatcher> combinedMatchers = new HashMap<CombinedPattern, CombinedMatcher>();
+	private final LineMarker lineMarker = new LineMarker();
+
+	/** Files larger than this are counted a window at a time rather than being mapped and decoded whole */
+	static final long STREAMING_THRESHOLD = 16L * 1024 * 1024;
+	/** Number of chars held in memory at any one time when streaming */
+	private static final int WINDOW_SIZE = 1024 * 1024;
+	private static final int READ_SIZE = 64 * 1024;
+	/** Large files are only split into segments at least this long */
+	private static final int MIN_SEGMENT_SIZE = 256 * 1024;
+
+	// the sizes in use, which the tests make small so that small files cross the boundaries
+	private long streamingThreshold = STREAMING_THRESHOLD;
+	private int windowSize = WINDOW_SIZE;
+	/** Multi-line matches up to this length are found across window boundaries */
+	private int maxMatchLength = WINDOW_SIZE / 2;
+	private int readSize = READ_SIZE;
+	private int minSegmentSize = MIN_SEGMENT_SIZE;
+
+	/** Time each CountItem may spend matching a file, plus MATCH_TIME_PER_MB for each MB of the file */
+	private static final long MATCH_TIME_LIMIT = TimeUnit.SECONDS.toNanos(5);
+	private static final long MATCH_TIME_PER_MB = TimeUnit.SECONDS.toNanos(1);
 
-		private Group(Integer start, Integer end)
+	// only allocated once a large file is found
+	private CharBuffer window;
+	private ByteBuffer readBuffer;
+	/** offset up to which the lines of the text have been scanned */
+	private int scannedTo;
+	/** end of the matches that continue beyond the scanned text, or -1 */
+	private int deferredEnd;
+	/** bytes of the current file already added to the progress; the segment threads add to it too */
+	private final AtomicLong progressReported = new AtomicLong();
+
+	/**
+	 * Marks the lines holding blank runs and CountItem matches
+	 */
+	private class LineMarker implements LineScanner.BlankRunListener, CombinedMatcher.MatchListener
+	{
+		@Override
+		public void blankRun(int start, int end)
 		{
-			this.start = start;
-			this.end = end;
+			markLines(start, end);
 		}
 
 		@Override
-		public int compareTo(Group g)
+		public void match(int start, int end)
 		{
-			return start.compareTo(g.start);
+			markLines(start, end);
 		}
 	}
 
@@ -83,33 +126,120 @@ public class FileCounter implements Runnable
 	public FileCounter(FileCounterManager fcManager, String charsetName, boolean countBlankLines)
 	{
 		this.fcManager = fcManager;
+		summary = new SummaryDetails(fcManager.getFileTypeIds());
+		liveTotals = fcManager.newLiveTotalsStripe();
 		charset = Charset.forName(charsetName);
 		decoder = charset.newDecoder();
+		decodeBuffer = new DecodeBuffer(decoder);
+		asciiCompatible = isAsciiCompatible(charset);
 		this.countBlankLines = countBlankLines;
 	}
 
+	/**
+	 * Change the sizes files are counted with; must be called before the first file is counted
+	 * @param streamingThreshold files larger than this are streamed
+	 * @param windowSize chars held in memory when streaming
+	 * @param readSize bytes read at a time when streaming
+	 * @param minSegmentSize smallest segment a large file is split into
+	 */
+	void setSizes(long streamingThreshold, int windowSize, int readSize, int minSegmentSize)
+	{
+		this.streamingThreshold = streamingThreshold;
+		this.windowSize = windowSize;
+		maxMatchLength = windowSize / 2;
+		this.readSize = readSize;
+		this.minSegmentSize = minSegmentSize;
+	}
+
 	@Override public void run()
 	{
 		log.entering("FileCounter", "run");
 		
-		FileDetails fd;
 		// count the lines in each file
-		while (!Thread.interrupted() && ((fd = fcManager.nextFileDetails()) != null))
+		FileQueue.Chunk chunk = new FileQueue.Chunk();
+		FileDetails details;
+		PrefetchQueue.PrefetchedFile file;
+		try
 		{
-			matches.clear();
-			countFile(fd);
-		}
+			while (!Thread.currentThread().isInterrupted())
+			{
+				fcManager.acquireWorkPermit();
+				try
+				{
+					if (fcManager.isPrefetching())
+					{
+						// the files have already been claimed and read by the FilePrefetchers
+						if ((file = fcManager.takePrefetchedFile()) == null) {
+							break;
+						}
+						countFile(file);
+						fileDone(file.details);
+						continue;
+					}
 
-		// add the remainder
-		if (!detailsList.isEmpty()) {
-			fcManager.addFileDetailsResults(detailsList);
+					if (!fcManager.claimFiles(chunk)) {
+						break;
+					}
+					for (int i=chunk.start; i<chunk.end && !Thread.currentThread().isInterrupted(); i++)
+					{
+						details = fcManager.getFileDetails(i);
+						countFile(details);
+						fileDone(details);
+					}
+				}
+				finally
+				{
+					fcManager.releaseWorkPermit();
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			log.fine("FileCounter interrupted waiting for files");
+		}
+		finally
+		{
+			// add the remainder, keeping the files counted before any failure
+			if (!detailsList.isEmpty()) {
+				fcManager.addFileDetailsResults(detailsList);
+			}
+			fcManager.counterFinished();
 		}
-
-		finished = true;
 
 		log.exiting("FileCounter", "run");
 	}
 
+	/**
+	 * Record that a file has been dealt with, adding the part of it that wasn't added
+	 * to the progress while it was counted
+	 */
+	private void fileDone(FileDetails details)
+	{
+		fcManager.fileDone(Math.max(0, details.getSize() - progressReported.getAndSet(0)));
+	}
+
+	/**
+	 * Add part of a large file to the progress while it is being counted, so the progress
+	 * doesn't stand still until it is finished. A file counted again after a CountItem has
+	 * timed out isn't added twice. May be called by the segment threads.
+	 * @param bytes bytes of the file counted since the last call
+	 * @param size size of the file, which is never exceeded
+	 */
+	private void reportProgress(long bytes, long size)
+	{
+		long reported, added;
+		do
+		{
+			reported = progressReported.get();
+			added = Math.min(bytes, size - reported);
+			if (added <= 0) {
+				return;
+			}
+		}
+		while (!progressReported.compareAndSet(reported, reported + added));
+		fcManager.bytesCounted(added);
+	}
+
 	/**
 	 * Return a summary for the files counted
 	 * @return SummaryDetails
@@ -120,158 +250,607 @@ public class FileCounter implements Runnable
 	}
 	
 	/**
-	 * Count the number of lines in a piece of text
-	 * @param text the text to process
-	 * @return number of lines
+	 * Mark the lines from the one holding the start offset to the one holding the end offset.
+	 * Overlapping matches and blank runs mark the same lines so each line is only counted once.
+	 * @param start
+	 * @param end
 	 */
-	private int countLines(CharSequence text)
+	private void markLines(int start, int end)
 	{
-		//log.entering("FileCounter", "countLines");
+		if (end > scannedTo)
+		{
+			// the rest of the lines are marked once the next window has been scanned
+			deferredEnd = Math.max(deferredEnd, end);
+			end = scannedTo;
+		}
+		matchedLines.set(lineScanner.getLine(start) - firstLine, lineScanner.getLine(end) - firstLine + 1);
+	}
 
-		NEW_LINE_MATCHER.reset(text);
-		int newLines = 0;
-		while (NEW_LINE_MATCHER.find())	{
-			newLines++;
+	/**
+	 * Get the matcher for the selected counters of a file
+	 * @param counters the selected counters
+	 * @return CombinedMatcher or null if there are no selected counters
+	 */
+	private CombinedMatcher getMatcher(CombinedPattern counters)
+	{
+		if (counters.isEmpty()) {
+			return null;
 		}
-		newLines++; // last line won't be matched above or if text is blank
-		
-		//log.exiting("FileCounter", "countLines", newLines);
-		return newLines;
+
+		CombinedMatcher matcher = combinedMatchers.get(counters);
+		if (matcher == null)
+		{
+			matcher = counters.matcher();
+			combinedMatchers.put(counters, matcher);
+		}
+		return matcher;
 	}
 
 	/**
-	 * Sorts out whether any of the matches overlap and returns a true count of matching lines
-	 * @return
+	 * Open and count a file
 	 */
-	private int getCountedLines(CharSequence text)
+	void countFile(FileDetails details)
 	{
-		CharSequence substring;
-		Group prevGroup = null;
-		Group group = null;
-		int countedLines = 0;
+		FileChannel channel = null;
+		try
+		{
+			channel = new FileInputStream(details.getFile()).getChannel();
+			details.resetTotals();
+			if (asciiCompatible && fcManager.isSniffing(details))
+			{
+				String skipReason = sniffer.getSkipReason(channel, details.getPath());
+				if (skipReason != null)
+				{
+					skipFile(details, channel.size(), skipReason);
+					return;
+				}
+			}
 
-		log.entering("FileCounter", "getCountedLines");
-		
-		// see if any match groups need to be merged
-		Iterator<Group> groupIt = matches.iterator();
-		while (groupIt.hasNext())
+			long size = channel.size();
+			MappedByteBuffer mapped = (size > streamingThreshold ? null : channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			countFile(details, channel, mapped);
+		}
+		catch (IOException ioe)
+		{
+			fcManager.raiseException(ioe, details);
+		}
+		finally
+		{
+			close(channel, details);
+		}
+	}
+
+	/**
+	 * Count a file that a FilePrefetcher has opened and read
+	 */
+	private void countFile(PrefetchQueue.PrefetchedFile file)
+	{
+		try
+		{
+			file.details.resetTotals();
+			if (file.skipReason != null) {
+				skipFile(file.details, file.channel.size(), file.skipReason);
+			} else {
+				countFile(file.details, file.channel, file.mapped);
+			}
+		}
+		catch (IOException ioe)
+		{
+			fcManager.raiseException(ioe, file.details);
+		}
+		finally
+		{
+			close(file.channel, file.details);
+		}
+	}
+
+	/**
+	 * Add a file that isn't worth counting to the results, tagged with the reason
+	 */
+	private void skipFile(FileDetails details, long size, String skipReason)
+	{
+		details.setSkipReason(skipReason);
+		summary.incrementSkippedFiles(size);
+		addResult(details);
+	}
+
+	/**
+	 * Add a file to the results, handing them to the FileCounterManager in batches
+	 */
+	private void addResult(FileDetails details)
+	{
+		detailsList.add(details);
+
+		if (detailsList.size() == LIST_TOTAL)
 		{
-			group = groupIt.next();
-			if (prevGroup == null)
+			fcManager.addFileDetailsResults(detailsList);
+			detailsList = new ArrayList<FileDetails>(LIST_TOTAL);
+		}
+	}
+
+	/**
+	 * Count an open file and add it to the results
+	 * @param details the file
+	 * @param channel the open file
+	 * @param mapped the mapped file, or null if it is too large to map
+	 */
+	private void countFile(FileDetails details, FileChannel channel, MappedByteBuffer mapped) throws IOException
+	{
+		try
+		{
+			CombinedPattern counters = fcManager.getCombinedPattern(details);
+			FileFingerprint fingerprint = null;
+			FileDetails original = null;
+			if (fcManager.isSkippingDuplicates())
 			{
-				prevGroup = group;
+				fingerprint = getFingerprint(channel, mapped);
+				original = fcManager.getCountedFile(fingerprint, counters);
 			}
-			else
+
+			if (original == null)
 			{
-				if (group.start <= (prevGroup.end+1)) // overlap or next to previous group
-				{
-					if (group.end >= prevGroup.end)
-					{ // previous group gets larger
-						prevGroup.end = group.end;
-					}
-					groupIt.remove(); // merged - no longer needed
-				}
-				else
-				{
-					prevGroup = group; // no change
+				long started = System.nanoTime();
+				countLines(channel, mapped, getMatcher(counters), details);
+				details.setCountTime(System.nanoTime() - started);
+				if (fingerprint != null) {
+					fcManager.addCountedFile(fingerprint, counters, details);
 				}
 			}
+			else
+			{
+				details.copyTotals(original);
+				summary.incrementDuplicateFiles(channel.size(), original.getCountTime());
+			}
+
+			if (countBlankLines) {
+				details.sourceLines = details.totalLines - details.countedLines;
+			} else {
+				details.sourceLines = details.totalLines - (details.blankLines + details.countedLines);
+			}
+			int fileType = fcManager.getFileTypeId(details.getFileType());
+			summary.addLines(fileType, details.totalLines, details.blankLines, details.countedLines, details.sourceLines);
+			if (liveTotals != null) {
+				liveTotals.addLines(fileType, details.totalLines, details.blankLines, details.countedLines, details.sourceLines);
+			}
+			addResult(details);
+		}
+		catch (CancellationException ce)
+		{
+			log.fine("Interrupted counting "+details.getPath());
 		}
+	}
 
-		// count merged groups
-		for (Group supergroup : matches)
+	private static void close(FileChannel channel, FileDetails details)
+	{
+		if (channel != null)
 		{
-			substring = text.subSequence(supergroup.start, supergroup.end);
-			countedLines += countLines(substring);
+			try {
+				channel.close();
+			} catch (IOException ioe) {
+				log.log(Level.FINE, "Cannot close "+details.getPath(), ioe);
+			}
 		}
+	}
 
-		log.exiting("FileCounter", "getCountedLines", countedLines);
-		
-		return countedLines;
+	/**
+	 * Fingerprint the contents of a file, leaving the channel at the start of the file
+	 * @param channel the file
+	 * @param mapped the mapped file, or null if it is too large to map
+	 */
+	private FileFingerprint getFingerprint(FileChannel channel, MappedByteBuffer mapped) throws IOException
+	{
+		if (mapped != null) {
+			return FileFingerprint.of(mapped);
+		}
+
+		if (readBuffer == null) {
+			readBuffer = ByteBuffer.allocate(readSize);
+		}
+		FileFingerprint fingerprint = FileFingerprint.of(channel, readBuffer);
+		channel.position(0);
+		return fingerprint;
 	}
 
-	private void countFile(FileDetails details)
+	/**
+	 * Count the lines of a file. Any CountItem that takes longer than its time limit is
+	 * reported and the file is counted again without it.
+	 * @param channel the file
+	 * @param mapped the mapped file, or null to count it a window at a time
+	 */
+	private void countLines(FileChannel channel, MappedByteBuffer mapped, CombinedMatcher matcher, FileDetails details)
+		throws IOException
 	{
-		try
+		long size = channel.size();
+		if (asciiCompatible && fcManager.isSplitting(size))
 		{
-			FileChannel channel = new FileInputStream(details.getFile()).getChannel();
-			MappedByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			// mapping the bytes takes no memory, but a file above STREAMING_THRESHOLD is still
+			// streamed if it has to be counted in one go
+			MappedByteBuffer whole = (mapped != null ? mapped : channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+			if (countSegments(whole, (matcher == null ? null : fcManager.getCombinedPattern(details)), details)) {
+				return;
+			}
+			log.fine("Counting "+details.getPath()+" without splitting it");
+		}
 
-			// Decode the file into a char buffer
-			CharBuffer cb = decoder.decode(bb);
+		if (matcher != null) {
+			matcher.startFile(getTimeLimit(size));
+		}
 
-			int totalLines = 0;
-			int blankLines = 0;
+		while (true)
+		{
+			try
+			{
+				if (mapped == null) {
+					countStream(channel, matcher, details);
+				} else {
+					countMapped(mapped, matcher, details);
+				}
+				return;
+			}
+			catch (MatchTimeoutException mte)
+			{
+				CountItem item = matcher.disable(mte.getIndex());
+				if (item == null) {
+					log.fine("Matching the combined CountItems of "+details.getPath()+" timed out, matching them one at a time");
+				} else {
+					fcManager.raiseTimeout(item, details);
+				}
+				asciiText.clear();
+				channel.position(0);
+			}
+		}
+	}
+
+	/**
+	 * @return nanoseconds each CountItem may spend matching a file of the given size
+	 */
+	private static long getTimeLimit(long size)
+	{
+		return MATCH_TIME_LIMIT + (size / (1024 * 1024)) * MATCH_TIME_PER_MB;
+	}
 
-			// count total lines
-			totalLines += countLines(cb);
+	/**
+	 * Count a large file in segments on the FileCounterManager's segment threads. The lines
+	 * of the segments are scanned at the same time, then their CountItems are matched at the
+	 * same time, and then any segment that a match from the one before it runs into is matched
+	 * again carrying on from that match, which gives the same count as countMapped().
+	 * @param bb the file, in an ASCII compatible character set
+	 * @param counters the CountItems to match, or null if there are none
+	 * @return false if the file has to be counted in one go instead: it can't be split, it
+	 * isn't all ASCII and there are CountItems to match, or a CountItem ran over its time limit
+	 */
+	private boolean countSegments(MappedByteBuffer bb, final CombinedPattern counters, FileDetails details)
+	{
+		// not the reused asciiText, which may be counted again while a failed segment is stopping
+		AsciiCharSequence text = new AsciiCharSequence();
+		text.setBytes(bb);
+		final SegmentCounter[] segments = split(text, fcManager.getSegmentThreads());
+		if (segments == null) {
+			return false;
+		}
 
-			// count blank lines
-			if (countBlankLines)
+		// scanning the lines and matching are each half of the work, unless there is nothing to match
+		final long size = details.getSize();
+		final int phases = (counters == null ? 1 : 2);
+		final SegmentCounter.ProgressListener progress = new SegmentCounter.ProgressListener()
+		{
+			@Override public void progress(int chars)
+			{
+				reportProgress(chars / phases, size);
+			}
+		};
+		List<Runnable> tasks = new ArrayList<Runnable>(segments.length);
+		for (final SegmentCounter segment : segments)
+		{
+			tasks.add(new Runnable()
 			{
-				BLANK_LINE_MATCHER.reset(cb);
-				while (BLANK_LINE_MATCHER.find())
+				@Override public void run()
 				{
-					blankLines++;
-					matches.add(new Group(BLANK_LINE_MATCHER.start(), BLANK_LINE_MATCHER.end()));
+					segment.scanLines(countBlankLines, progress);
+				}
+			});
+		}
+		fcManager.runSegments(tasks);
+
+		if (counters != null)
+		{
+			for (SegmentCounter segment : segments)
+			{
+				if (!segment.isAscii()) {
+					return false; // the patterns need the decoded chars
 				}
 			}
 
-			details.resetTotals();
-			details.totalLines = totalLines;
-			details.blankLines = blankLines;
-			summary.incrementTotalLines(totalLines);
-			summary.incrementBlankLines(blankLines);
-			summary.addCount(details.getFileExtension(), FileCounterManager.TOTAL_LINES, totalLines);
-			summary.addCount(details.getFileExtension(), FileCounterManager.BLANK_LINES, blankLines);
-			
-			// count other items
-			List<CountItem> counters = fcManager.getSelectedPatterns(details);
-			if (counters.size() > 0)
+			final long timeLimit = getTimeLimit(bb.capacity());
+			tasks.clear();
+			for (final SegmentCounter segment : segments)
 			{
-				Matcher matcher;
-				for (CountItem counter : counters)
+				tasks.add(new Runnable()
 				{
-					matcher = counter.regExp.matcher(cb);
-					while (matcher.find())
+					@Override public void run()
 					{
-						matches.add(new Group(matcher.start(), matcher.end()));
+						segment.findMatches(counters, timeLimit, null, progress);
+					}
+				});
+			}
+
+			try
+			{
+				fcManager.runSegments(tasks);
+				for (int i=1; i<segments.length; i++)
+				{
+					if (segments[i].isOverlappedBy(segments[i-1].getNextStarts())) {
+						segments[i].findMatches(counters, timeLimit, segments[i-1].getNextStarts(), null);
 					}
 				}
 			}
+			catch (MatchTimeoutException mte)
+			{
+				return false;
+			}
+		}
 
-			// calculate counted lines
-			details.countedLines = getCountedLines(cb);
-			summary.addCount(details.getFileExtension(), FileCounterManager.COUNT_LINES, details.countedLines);
-			summary.incrementCountedLines(details.countedLines);
+		// number the lines of each segment on from those before it
+		int[] firstLines = new int[segments.length];
+		int totalLines = 0;
+		int blankLines = 0;
+		for (int i=0; i<segments.length; i++)
+		{
+			firstLines[i] = totalLines;
+			totalLines += segments[i].getLineCount();
+			blankLines += segments[i].getBlankLines();
+		}
+		matchedLines.clear();
+		for (int i=0; i<segments.length; i++) {
+			segments[i].markLines(matchedLines, firstLines[i], segments, firstLines);
+		}
 
-			if (countBlankLines) {
-				details.sourceLines = details.totalLines - details.countedLines;
-			} else {
-				details.sourceLines = details.totalLines - (details.blankLines + details.countedLines);
+		details.totalLines = totalLines;
+		details.blankLines = countBlankLines ? blankLines : 0;
+		details.countedLines = matchedLines.cardinality();
+		return true;
+	}
+
+	/**
+	 * Split text into segments of about the same size, each starting at the beginning of a line
+	 * @param text
+	 * @param count number of segments wanted
+	 * @return the segments or null if the text can't be split into at least two
+	 */
+	private SegmentCounter[] split(CharSequence text, int count)
+	{
+		int length = text.length();
+		count = Math.min(count, length / minSegmentSize);
+		if (count < 2) {
+			return null;
+		}
+
+		List<SegmentCounter> segments = new ArrayList<SegmentCounter>(count);
+		int start = 0;
+		int end;
+		for (int i=1; i<count; i++)
+		{
+			// the segment ends after the first \n from its share of the text on
+			end = Math.max(start, (int)((long)length * i / count));
+			while (end < length && text.charAt(end) != '\n') {
+				end++;
 			}
-			summary.incrementSourceLines(details.sourceLines);
-			summary.addCount(details.getFileExtension(), FileCounterManager.REM_LINES, details.sourceLines);
-			detailsList.add(details);
+			end++;
+			if (end >= length) {
+				break;
+			}
+			segments.add(new SegmentCounter(text, start, end));
+			start = end;
+		}
+		if (segments.isEmpty()) {
+			return null;
+		}
+		segments.add(new SegmentCounter(text, start, length));
+		return segments.toArray(new SegmentCounter[segments.size()]);
+	}
 
-			if (detailsList.size() == LIST_TOTAL)
+	/**
+	 * Count a file that has been mapped whole. If the character set is ASCII compatible the
+	 * lines are scanned straight from the mapped bytes and the file is only decoded when it
+	 * isn't all ASCII and there are CountItems to match.
+	 */
+	private void countMapped(MappedByteBuffer bb, CombinedMatcher matcher, FileDetails details) throws IOException
+	{
+		CharSequence text;
+		if (asciiCompatible)
+		{
+			asciiText.setBytes(bb);
+			text = asciiText;
+		}
+		else
+		{
+			// Decode the file into the reused char buffer
+			text = decodeBuffer.decode(bb);
+		}
+
+		// count total and blank lines in a single pass
+		matchedLines.clear();
+		firstLine = 0;
+		scannedTo = text.length();
+		deferredEnd = -1;
+		lineScanner.scan(text, countBlankLines ? lineMarker : null);
+		details.totalLines = lineScanner.getTotalLines();
+		details.blankLines = countBlankLines ? lineScanner.getBlankLines() : 0;
+
+		// count other items
+		if (matcher != null)
+		{
+			if (asciiCompatible && !lineScanner.isAscii())
 			{
-				fcManager.addFileDetailsResults(detailsList);
-				detailsList.clear();
+				// the patterns need the real chars; the lines are the same but the offsets change
+				text = decodeBuffer.decode(bb);
+				scannedTo = text.length();
+				lineScanner.scan(text, null);
 			}
+			matcher.findAll(text, lineMarker);
 		}
-		catch (IOException ioe)
+		asciiText.clear();
+
+		details.countedLines = matchedLines.cardinality();
+	}
+
+	/**
+	 * Check whether the lines of a file in the character set can be found without decoding
+	 * it. Bytes below 0x80 have to stand for the same ASCII chars and can't be part of the
+	 * encoding of any other char.
+	 * @param charset
+	 * @return true if the character set is ASCII compatible
+	 */
+	static boolean isAsciiCompatible(Charset charset)
+	{
+		if (charset.name().equals("UTF-8")) {
+			return true; // multi-byte sequences only use bytes from 0x80
+		}
+		if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+			return false;
+		}
+
+		byte[] ascii = new byte[0x80];
+		for (int i=0; i<ascii.length; i++) {
+			ascii[i] = (byte)i;
+		}
+		String decoded = new String(ascii, charset);
+		if (decoded.length() != ascii.length) {
+			return false;
+		}
+		for (int i=0; i<ascii.length; i++)
 		{
-			fcManager.raiseException(ioe, details);
+			if (decoded.charAt(i) != i) {
+				return false;
+			}
 		}
+		return true;
 	}
 
 	/**
-	 * Has the FileCounter finished executing
-	 * @return true or false
+	 * Count a file a window at a time so that the memory used doesn't depend on the size of the file.
+	 * Each window is only scanned up to a commit offset maxMatchLength before its end so that
+	 * matches starting before the commit offset can be completed. The text from the commit offset
+	 * on, plus one char of context for ^ and look-behinds, is moved to the start of the next window.
 	 */
-	boolean isFinished()
+	private void countStream(FileChannel channel, CombinedMatcher matcher, FileDetails details) throws IOException
 	{
-		return finished;
+		if (window == null) {
+			window = CharBuffer.allocate(windowSize);
+		}
+		if (readBuffer == null) {
+			readBuffer = ByteBuffer.allocate(readSize);
+		}
+		window.clear();
+		readBuffer.clear();
+		decoder.reset();
+		lineScanner.reset();
+		if (matcher != null) {
+			matcher.reset();
+		}
+
+		LineScanner.BlankRunListener runListener = (countBlankLines ? lineMarker : null);
+		int countedLines = 0;
+		int from = 0;
+		int length, commit, commitLine, end;
+		boolean endOfInput = false;
+		boolean flushing = false;
+		boolean drained = false;
+		CoderResult result;
+		matchedLines.clear();
+		firstLine = 0;
+		deferredEnd = -1;
+
+		while (true)
+		{
+			// fill the window
+			while (!drained && window.hasRemaining())
+			{
+				if (!flushing)
+				{
+					if (!endOfInput) {
+						endOfInput = (channel.read(readBuffer) == -1);
+					}
+					readBuffer.flip();
+					result = decoder.decode(readBuffer, window, endOfInput);
+					readBuffer.compact();
+					if (result.isError()) {
+						result.throwException();
+					}
+					if (result.isOverflow()) {
+						break;
+					}
+					flushing = endOfInput;
+				}
+				if (flushing)
+				{
+					if (decoder.flush(window).isOverflow()) {
+						break;
+					}
+					drained = true;
+				}
+			}
+			window.flip();
+
+			length = window.length();
+			commit = (drained ? length : getCommitOffset(window, length - maxMatchLength));
+
+			scannedTo = commit;
+			lineScanner.scan(window, from, commit, drained, runListener);
+			if (!drained) {
+				lineScanner.reportOpenRun(runListener);
+			}
+			if (deferredEnd != -1)
+			{
+				end = deferredEnd;
+				deferredEnd = -1;
+				markLines(from, end);
+			}
+			if (matcher != null) {
+				matcher.find(window, from, (drained ? length+1 : commit), lineMarker);
+			}
+
+			if (drained)
+			{
+				countedLines += matchedLines.cardinality();
+				break;
+			}
+			// the bytes read less those not yet decoded
+			reportProgress(channel.position() - readBuffer.position() - progressReported.get(), details.getSize());
+
+			// nothing found from now on can start before the line holding the commit offset
+			commitLine = lineScanner.getLine(commit) - firstLine;
+			countedLines += matchedLines.cardinality();
+			matchedLines = matchedLines.get(commitLine, Math.max(commitLine, matchedLines.length()));
+			countedLines -= matchedLines.cardinality();
+			firstLine += commitLine;
+
+			// keep one char before the commit offset as context
+			window.position(commit-1);
+			window.compact();
+			lineScanner.shift(commit-1, 1);
+			if (matcher != null) {
+				matcher.shift(commit-1);
+			}
+			if (deferredEnd != -1) {
+				deferredEnd -= commit-1;
+			}
+			from = 1;
+		}
+
+		details.totalLines = lineScanner.getTotalLines();
+		details.blankLines = countBlankLines ? lineScanner.getBlankLines() : 0;
+		details.countedLines = countedLines;
+	}
+
+	/**
+	 * Get the offset a window will be scanned up to, making sure a \r\n pair isn't split
+	 */
+	private static int getCommitOffset(CharSequence text, int commit)
+	{
+		if (text.charAt(commit-1) == '\r' && text.charAt(commit) == '\n') {
+			commit++;
+		}
+		return commit;
 	}
 }
@@ -0,0 +1,363 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.swing.SwingUtilities;
+import javax.swing.tree.DefaultMutableTreeNode;
+import nrs.scc.tab2.CountItem;
+import nrs.scc.tab2.FileType;
+import nrs.scc.tab2.FileTypes;
+import nrs.scc.tab2.FileTypesSAXParser;
+import org.jdesktop.application.Application;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Measures the counting engine, printing a table for each of:
+ * <ul>
+ * <li>the throughput and the bytes allocated for each MB counted by a single FileCounter</li>
+ * <li>the throughput and garbage collections with 1 to 32 FileCounters</li>
+ * <li>the time taken by a tree whose largest file is listed last, counted in table order,
+ * largest first and largest first with large files split, against the total work divided
+ * between the FileCounters</li>
+ * </ul>
+ * The files counted are generated in a temporary directory unless a directory is given.
+ * Run with <code>ant benchmark</code>, or <code>ant benchmark -Ddir=path</code>.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+public class FileCounterBenchmark
+{
+	private static final String DEFAULT_FILE_TYPES = "/nrs/scc/tab2/filetypes.xml";
+	private static final String CHARSET = "UTF-8";
+	private static final int[] THREADS = {1, 2, 4, 8, 16, 32};
+	/** times each run is repeated, the fastest being reported */
+	private static final int RUNS = 3;
+	private static final int SMALL_FILES = 2000;
+	private static final int LARGE_FILE_LINES = 400000;
+	private static final long SPLIT_THRESHOLD = 1024 * 1024;
+	private static final double MB = 1024 * 1024;
+
+	private final FileTypes fileTypes;
+	private final Random random = new Random(20090401);
+
+	/**
+	 * Provides the resources of the Tasks without starting the GUI
+	 */
+	private static class BenchmarkApplication extends Application
+	{
+		@Override protected void startup()
+		{
+		}
+	}
+
+	FileCounterBenchmark(FileTypes fileTypes)
+	{
+		this.fileTypes = fileTypes;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		FileCounterBenchmark benchmark = new FileCounterBenchmark(loadFileTypes());
+		File dir;
+		if (args.length > 0)
+		{
+			dir = new File(args[0]);
+		}
+		else
+		{
+			dir = File.createTempFile("scc", "benchmark");
+			dir.delete();
+			dir.mkdir();
+			benchmark.generate(dir);
+		}
+
+		try
+		{
+			List<FileDetails> files = new ArrayList<FileDetails>();
+			listFiles(dir, files);
+			benchmark.measureAllocation(files);
+			benchmark.measureScaling(files);
+			if (args.length == 0) {
+				benchmark.measureSkew(files);
+			}
+		}
+		finally
+		{
+			if (args.length == 0) {
+				delete(dir);
+			}
+		}
+		System.exit(0);
+	}
+
+	/**
+	 * Load the default file types with all their CountItems selected
+	 */
+	private static FileTypes loadFileTypes() throws Exception
+	{
+		XMLReader reader = XMLReaderFactory.createXMLReader();
+		FileTypesSAXParser saxParser = new FileTypesSAXParser(new DefaultMutableTreeNode());
+		reader.setContentHandler(saxParser);
+		reader.setErrorHandler(saxParser);
+		reader.parse(new InputSource(FileCounterBenchmark.class.getResourceAsStream(DEFAULT_FILE_TYPES)));
+
+		Map<String, FileType> ftMap = saxParser.getFileTypes();
+		for (FileType ft : ftMap.values())
+		{
+			Enumeration e = ft.children();
+			while (e.hasMoreElements()) {
+				((CountItem)e.nextElement()).setSelected(true);
+			}
+		}
+		return new FileTypes(ftMap);
+	}
+
+	/**
+	 * Count the files one after another with a single FileCounter on this thread, which
+	 * reuses its buffers from one file to the next
+	 */
+	void measureAllocation(List<FileDetails> files)
+	{
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		com.sun.management.ThreadMXBean allocation = (threads instanceof com.sun.management.ThreadMXBean ?
+			(com.sun.management.ThreadMXBean)threads : null);
+		long totalBytes = getTotalBytes(files);
+
+		System.out.println("One FileCounter, "+files.size()+" files, "+format(totalBytes / MB)+" MB");
+		System.out.println("run\tseconds\tMB/s\tallocated bytes per MB");
+		FileCounterManager manager = newManager(files, 1, false, 0);
+		for (int run=0; run<=RUNS; run++)
+		{
+			FileCounter counter = new FileCounter(manager, CHARSET, true);
+			long allocated = (allocation == null ? 0 : allocation.getThreadAllocatedBytes(Thread.currentThread().getId()));
+			long started = System.nanoTime();
+			for (FileDetails details : files) {
+				counter.countFile(details);
+			}
+			double seconds = (System.nanoTime() - started) / 1e9;
+			if (allocation != null) {
+				allocated = allocation.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocated;
+			}
+
+			// the first run warms up the JIT
+			System.out.println((run == 0 ? "warm up" : Integer.toString(run))+"\t"+format(seconds)+"\t"+
+				format(totalBytes / MB / seconds)+"\t"+(allocation == null ? "n/a" : Long.toString((long)(allocated / (totalBytes / MB)))));
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Count the files with more and more FileCounters
+	 */
+	void measureScaling(List<FileDetails> files) throws Exception
+	{
+		long totalBytes = getTotalBytes(files);
+		System.out.println(Runtime.getRuntime().availableProcessors()+" processors, "+files.size()+" files, "+
+			format(totalBytes / MB)+" MB, largest first, no splitting");
+		System.out.println("counters\tseconds\tfiles/s\tMB/s\tspeed up\tGCs\tGC seconds");
+		count(files, 1, true, 0); // warm up
+		double oneCounter = 0;
+		for (int threadCount : THREADS)
+		{
+			long gcs = getCollections();
+			long gcTime = getCollectionTime();
+			double seconds = count(files, threadCount, true, 0);
+			if (threadCount == 1) {
+				oneCounter = seconds;
+			}
+			System.out.println(threadCount+"\t"+format(seconds)+"\t"+format(files.size() / seconds)+"\t"+
+				format(totalBytes / MB / seconds)+"\t"+format(oneCounter / seconds)+"\t"+
+				(getCollections() - gcs) / RUNS+"\t"+format((getCollectionTime() - gcTime) / 1000.0 / RUNS));
+		}
+		System.out.println();
+	}
+
+	/**
+	 * Count the files with the largest file moved to the end of the table, as if it had been
+	 * found last
+	 */
+	void measureSkew(List<FileDetails> files) throws Exception
+	{
+		List<FileDetails> skewed = new ArrayList<FileDetails>(files);
+		FileDetails largest = skewed.get(0);
+		for (FileDetails details : skewed)
+		{
+			if (details.getSize() > largest.getSize()) {
+				largest = details;
+			}
+		}
+		skewed.remove(largest);
+		skewed.add(largest);
+
+		int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+		double oneCounter = count(skewed, 1, false, 0);
+		System.out.println(threadCount+" counters, largest file of "+format(largest.getSize() / MB)+" MB listed last");
+		System.out.println("order\tseconds\tone counter / counters");
+		System.out.println("table\t"+format(count(skewed, threadCount, false, 0))+"\t"+format(oneCounter / threadCount));
+		System.out.println("largest first\t"+format(count(skewed, threadCount, true, 0))+"\t"+format(oneCounter / threadCount));
+		System.out.println("largest first, split\t"+format(count(skewed, threadCount, true, SPLIT_THRESHOLD))+"\t"+
+			format(oneCounter / threadCount));
+		System.out.println();
+	}
+
+	/**
+	 * Count the files as the application does
+	 * @return the fastest of the runs in seconds
+	 */
+	private double count(List<FileDetails> files, int threadCount, boolean largestFirst, long splitThreshold)
+		throws Exception
+	{
+		double fastest = Double.MAX_VALUE;
+		for (int run=0; run<RUNS; run++)
+		{
+			FileCounterManager manager = newManager(files, threadCount, largestFirst, splitThreshold);
+			long started = System.nanoTime();
+			manager.doInBackground();
+			fastest = Math.min(fastest, (System.nanoTime() - started) / 1e9);
+			finish(manager);
+		}
+		return fastest;
+	}
+
+	private FileCounterManager newManager(List<FileDetails> files, int threadCount, boolean largestFirst,
+		long splitThreshold)
+	{
+		return new FileCounterManager(new BenchmarkApplication(), null, files.size(), files.iterator(), fileTypes,
+			new ResultsTableModel(new String[0]), new SummaryResultsTableModel(new String[0]), CHARSET, threadCount,
+			true, null, false, largestFirst, 0, splitThreshold, 0);
+	}
+
+	/**
+	 * Stop the timers of the manager and let go of its results
+	 */
+	private static void finish(final FileCounterManager manager) throws Exception
+	{
+		SwingUtilities.invokeAndWait(new Runnable()
+		{
+			@Override public void run()
+			{
+				manager.finished();
+			}
+		});
+	}
+
+	/**
+	 * Generate Java files of 1 to 16 KB, and one large enough to be split. The files are all
+	 * ASCII, as most source is, so they are counted without being decoded.
+	 */
+	void generate(File dir) throws IOException
+	{
+		for (int i=0; i<SMALL_FILES; i++) {
+			write(new File(dir, "Small"+i+".java"), 20 + random.nextInt(400));
+		}
+		write(new File(dir, "Large.java"), LARGE_FILE_LINES);
+	}
+
+	private void write(File file, int lineCount) throws IOException
+	{
+		String[] lines = {"\tint x = 1;", "\t\tif (x > 0) {", "\t\t}", "", "// a comment", "\t/**",
+			"\t * a doc comment", "\t */", "\t/* one line */", "import java.util.List;", "\t@Override",
+			"public class Generated", "\t\treturn x + \"s\";", "\t\t/* two", "\t\t   lines */"};
+		StringBuilder sb = new StringBuilder(lineCount * 16);
+		for (int i=0; i<lineCount; i++)
+		{
+			sb.append(lines[random.nextInt(lines.length)]);
+			sb.append('\n');
+		}
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(sb.toString().getBytes(CHARSET));
+		} finally {
+			os.close();
+		}
+	}
+
+	private static void listFiles(File dir, List<FileDetails> files)
+	{
+		File[] children = dir.listFiles();
+		if (children == null) {
+			return;
+		}
+		for (File file : children)
+		{
+			if (file.isDirectory()) {
+				listFiles(file, files);
+			} else {
+				files.add(new FileDetails(file));
+			}
+		}
+	}
+
+	private static void delete(File dir)
+	{
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	private static long getTotalBytes(List<FileDetails> files)
+	{
+		long totalBytes = 0;
+		for (FileDetails details : files) {
+			totalBytes += details.getSize();
+		}
+		return totalBytes;
+	}
+
+	private static long getCollections()
+	{
+		long collections = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			collections += gc.getCollectionCount();
+		}
+		return collections;
+	}
+
+	/**
+	 * @return milliseconds spent collecting garbage
+	 */
+	private static long getCollectionTime()
+	{
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			time += gc.getCollectionTime();
+		}
+		return time;
+	}
+
+	private static String format(double value)
+	{
+		return String.format("%.2f", value);
+	}
+}
@@ -18,6 +18,8 @@
 
 package nrs.scc.tab3;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -25,11 +27,26 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.swing.Timer;
 import nrs.scc.SourceCodeCounterView;
 import nrs.scc.tab2.CountItem;
 import nrs.scc.tab2.FileTypes;
+import org.jdesktop.application.Application;
 import org.jdesktop.application.ResourceMap;
 import org.jdesktop.application.Task;
 
@@ -41,40 +58,79 @@ import org.jdesktop.application.Task;
 public class FileCounterManager extends Task
 {
 	private SourceCodeCounterView sccView;
-	private Iterator<FileDetails> fileIterator;
+	private final FileQueue fileQueue;
 	private FileTypes fileTypes;
-	private ResultsTableModel rtm;
 	private SummaryResultsTableModel srtm;
 	private Map<String, List<CountItem>> patternCache = new HashMap<String, List<CountItem>>();
+	private Map<String, CombinedPattern> combinedPatternCache = new HashMap<String, CombinedPattern>();
 	private int errorCount;
 	private String charset;
 	private boolean countBlankLines = true;
+	/**
+	 * the first file counted with each fingerprint, for each set of CountItems the files are
+	 * matched against; null if duplicates are counted
+	 */
+	private ConcurrentMap<CombinedPattern, ConcurrentMap<FileFingerprint, FileDetails>> countedFiles;
 	private int threadCount = 1;
+	/** chooses how many FileCounters are active; null if they all are */
+	private AdaptiveConcurrency concurrency;
+	/** files and bytes counted so far, whatever the order the results are sent in */
+	private final AtomicInteger filesDone = new AtomicInteger();
+	private final AtomicLong bytesDone = new AtomicLong();
+	/** number of threads reading files ahead of the FileCounters; 0 if they read their own */
+	private int prefetcherCount;
+	/** the files read ahead; null if the FileCounters read their own */
+	private PrefetchQueue prefetchQueue;
+	/** how the read ahead went, shown when the count finishes; null if the files weren't read ahead */
+	private String readAheadMetrics;
 	private String unknownFilesFileType;
-	private ThreadGroup tGroup;
-	private SummaryDetails summaryDetails = new SummaryDetails();
+	/** runs the FileCounters; created up front so that cancelling can always shut it down */
+	private final ExecutorService executor;
+	/** files at least this large are split into segments counted at the same time; 0 if they aren't */
+	private long splitThreshold;
+	/** counts the segments of large files; null if they aren't split */
+	private ExecutorService segmentExecutor;
+	private int segmentThreads;
+	/** numbers the file types for the SummaryDetails of all the FileCounters */
+	private final FileTypeIds fileTypeIds = new FileTypeIds();
+	private SummaryDetails summaryDetails = new SummaryDetails(fileTypeIds);
+	/** the totals shown while counting; null if they are only shown at the end */
+	private LiveTotals liveTotals;
+	/** refreshes the summary table from the live totals */
+	private Timer liveTotalsTimer;
 	private final static Logger log = Logger.getLogger(FileCounterManager.class.getName());
 
-	static String BLANK_LINES;
-	static String COUNT_LINES;
-	static String REM_LINES;
-	static String TOTAL_LINES;
+	/** fileCountThreads value to choose the number of FileCounters while counting */
+	public static final int AUTO_THREADS = 0;
+	/** milliseconds between changes to the number of active FileCounters */
+	private static final long ADJUST_INTERVAL = 500;
+	/** bytes that may be read ahead of the FileCounters */
+	private static final long PREFETCH_BYTES = 64L * 1024 * 1024;
+	/** files that may be held open ahead of the FileCounters */
+	private static final int PREFETCH_FILES = 256;
+	/** milliseconds between updates of the progress */
+	private static final int PROGRESS_INTERVAL = 500;
+	/** nanoseconds between the progress lines written to the log */
+	private static final long PROGRESS_LOG_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+	private static final double MB = 1024 * 1024;
+
+	private static String TIMEOUT_ERROR;
 
 	// timing info
 	private Date start;
 	private int fileCount;
-	private float processedFileCount;
 	private int totalFileCount;
+	/** how far through the files the count is, by size */
+	private final ProgressModel progress;
+	/** samples the progress model and shows the progress */
+	private final Timer progressTimer;
+	/** nanoTime the progress was last logged */
+	private long progressLogged;
+	/** shows the progress on the console the application was started from; null if there isn't one */
+	private final ProgressLine progressLine;
 
-	// declared as class variables to minimise primitive creation
-	private long timeSoFar;
-	private float timeSoFarSeconds;
-	private int eta;
-
-	/** When enough files have been counted send them in a block to the ResultsTableModel
-	 * to reduce the number of row insert events fired */
-	private final static int DETAILS_CACHE_SIZE = 100;
-	private List<FileDetails> detailsListCache = new ArrayList<FileDetails>(DETAILS_CACHE_SIZE);
+	/** passes the results to the ResultsTableModel on the event dispatch thread */
+	private final ResultsDelivery resultsDelivery;
 
 	private Map<String, String> errors = new TreeMap<String, String>();
 	
@@ -83,45 +139,302 @@ public class FileCounterManager extends Task
 	 */
 	public FileCounterManager(SourceCodeCounterView sccView, int totalFileCount, Iterator<FileDetails> fileIterator, FileTypes fileTypes,
 		ResultsTableModel rtm, SummaryResultsTableModel srtm, String charset, int fileCountThreads, boolean countBlankLines,
-		String unknownFilesFileType)
+		String unknownFilesFileType, boolean skipDuplicates, boolean largestFirst, int filesReadAtOnce, long splitThreshold,
+		int liveTotalsInterval)
+	{
+		this(sccView.getApplication(), sccView, totalFileCount, fileIterator, fileTypes, rtm, srtm, charset, fileCountThreads,
+			countBlankLines, unknownFilesFileType, skipDuplicates, largestFirst, filesReadAtOnce, splitThreshold,
+			liveTotalsInterval);
+	}
+
+	/**
+	 * Create a FileCounterManager that may count without the view, for the tests and benchmarks
+	 * @param application
+	 * @param sccView told when the count has finished; may be null
+	 */
+	FileCounterManager(Application application, SourceCodeCounterView sccView, int totalFileCount,
+		Iterator<FileDetails> fileIterator, FileTypes fileTypes, ResultsTableModel rtm, SummaryResultsTableModel srtm,
+		String charset, int fileCountThreads, boolean countBlankLines, String unknownFilesFileType, boolean skipDuplicates,
+		boolean largestFirst, int filesReadAtOnce, long splitThreshold, int liveTotalsInterval)
 	{
-		super(sccView.getApplication());
+		super(application);
 
 		this.sccView = sccView;
 		this.totalFileCount = totalFileCount;
-		this.fileIterator = fileIterator;
 		this.fileTypes = fileTypes;
-		this.rtm = rtm;
 		this.srtm = srtm;
 		this.charset = charset;
 		this.countBlankLines = countBlankLines;
 		this.unknownFilesFileType = unknownFilesFileType;
+		if (skipDuplicates) {
+			countedFiles = new ConcurrentHashMap<CombinedPattern, ConcurrentMap<FileFingerprint, FileDetails>>();
+		}
 
 		ResourceMap resourceMap = getResourceMap();
-		BLANK_LINES = resourceMap.getString("blank.lines");
-		COUNT_LINES = resourceMap.getString("count.lines");
-		REM_LINES = resourceMap.getString("rem.lines");
-		TOTAL_LINES = resourceMap.getString("total.lines");
+		TIMEOUT_ERROR = resourceMap.getString("timeout.error");
+
+		assert fileCountThreads >= 0 : "fileCountThreads must be >= 0";
+		int processors = Runtime.getRuntime().availableProcessors();
+		// leave room for the number of active FileCounters to grow
+		this.threadCount = (fileCountThreads == AUTO_THREADS ? Math.max(2, processors * 2) : fileCountThreads);
+		if (fileCountThreads == AUTO_THREADS) {
+			concurrency = new AdaptiveConcurrency(processors, threadCount);
+		}
+		if (filesReadAtOnce > 0)
+		{
+			// on slow drives the files are read by threads of their own while the FileCounters count
+			prefetcherCount = filesReadAtOnce;
+			prefetchQueue = new PrefetchQueue(PREFETCH_BYTES, PREFETCH_FILES, prefetcherCount, threadCount);
+		}
 
-		assert fileCountThreads > 0 : "fileCountThreads must be > 0";
-		this.threadCount = fileCountThreads;
+		// take the files from the table model now, on the event dispatch thread
+		List<FileDetails> files = new ArrayList<FileDetails>(totalFileCount);
+		long totalBytes = 0;
+		while (fileIterator.hasNext())
+		{
+			files.add(fileIterator.next());
+			totalBytes += files.get(files.size()-1).getSize();
+		}
+		fileQueue = new FileQueue(files.toArray(new FileDetails[files.size()]), (isPrefetching() ? prefetcherCount : threadCount),
+			largestFirst);
+		executor = Executors.newFixedThreadPool(threadCount + prefetcherCount, new FileCounterThreadFactory("FileCounter-"));
+		if (splitThreshold > 0)
+		{
+			this.splitThreshold = splitThreshold;
+			segmentThreads = processors;
+			segmentExecutor = Executors.newFixedThreadPool(segmentThreads, new FileCounterThreadFactory("SegmentCounter-"));
+		}
+		resultsDelivery = new ResultsDelivery(rtm);
+		resultsDelivery.start();
+		progress = new ProgressModel(files.size(), totalBytes, System.nanoTime());
+		progressLogged = System.nanoTime();
+		progressLine = ProgressLine.forConsole(getResourceMap().getString("progressLine"));
+		progressTimer = new Timer(PROGRESS_INTERVAL, new ActionListener() {
+			@Override public void actionPerformed(ActionEvent e)
+			{
+				updateProgress();
+			}
+		});
+		progressTimer.start();
+		if (liveTotalsInterval > 0)
+		{
+			liveTotals = new LiveTotals(fileTypeIds);
+			liveTotalsTimer = new Timer(liveTotalsInterval, new ActionListener() {
+				@Override public void actionPerformed(ActionEvent e)
+				{
+					refreshLiveTotals();
+				}
+			});
+			liveTotalsTimer.start();
+		}
+	}
+
+	/**
+	 * Names the threads with a prefix and a number
+	 */
+	private static class FileCounterThreadFactory implements ThreadFactory
+	{
+		private final String prefix;
+		private int count;
+
+		FileCounterThreadFactory(String prefix)
+		{
+			this.prefix = prefix;
+		}
+
+		@Override
+		public synchronized Thread newThread(Runnable r)
+		{
+			return new Thread(r, prefix+(count++));
+		}
 	}
 	
 	/**
-	 * Get the next FileDetails
-	 * @return FileDetails or null if the end of the list is reached
+	 * Claim the next files to count; safe to call from any number of FileCounters without locking
+	 * @param chunk receives the range of files claimed
+	 * @return false if there are no files left
+	 */
+	boolean claimFiles(FileQueue.Chunk chunk)
+	{
+		return fileQueue.claim(chunk);
+	}
+
+	/**
+	 * @param index
+	 * @return the file at the index of a claimed chunk
+	 */
+	FileDetails getFileDetails(int index)
+	{
+		return fileQueue.get(index);
+	}
+
+	/**
+	 * Wait until the FileCounter may claim more files
+	 * @throws InterruptedException if the count is cancelled while waiting
+	 */
+	void acquireWorkPermit() throws InterruptedException
+	{
+		if (concurrency != null) {
+			concurrency.acquire();
+		}
+	}
+
+	/**
+	 * The FileCounter has counted the files it claimed
+	 */
+	void releaseWorkPermit()
+	{
+		if (concurrency != null) {
+			concurrency.release();
+		}
+	}
+
+	/**
+	 * Record that a file has been dealt with, whether counted, skipped or failed
+	 * @param bytes size of the file, less any already added by {@link #bytesCounted(long)}
+	 */
+	void fileDone(long bytes)
+	{
+		filesDone.incrementAndGet();
+		bytesDone.addAndGet(bytes);
+	}
+
+	/**
+	 * Record part of a large file that has been counted, so the progress moves while it is
+	 * counted rather than only once it is done
+	 * @param bytes bytes of the file counted since it was last recorded
+	 */
+	void bytesCounted(long bytes)
+	{
+		bytesDone.addAndGet(bytes);
+	}
+
+	/**
+	 * @return the number of FileCounters that were active when the count finished, or
+	 * the number asked for if it wasn't chosen automatically
+	 */
+	int getActiveThreadCount()
+	{
+		return (concurrency == null ? threadCount : concurrency.getLimit());
+	}
+
+	/**
+	 * @param size size of a file in bytes
+	 * @return true if the file should be split into segments counted at the same time
+	 */
+	boolean isSplitting(long size)
+	{
+		return (segmentExecutor != null && size >= splitThreshold && size <= Integer.MAX_VALUE);
+	}
+
+	/**
+	 * @return number of threads counting the segments of large files
 	 */
-	synchronized FileDetails nextFileDetails()
+	int getSegmentThreads()
 	{
-		FileDetails fd = null;
-		if (fileIterator.hasNext())
+		return Math.max(2, segmentThreads);
+	}
+
+	/**
+	 * Run the tasks counting the segments of a large file and wait for them all to finish.
+	 * The first task is run on the calling thread rather than leaving it idle.
+	 * @param tasks
+	 * @throws MatchTimeoutException if a CountItem runs over its time limit on a segment
+	 * @throws CancellationException if the count is cancelled
+	 */
+	void runSegments(List<Runnable> tasks)
+	{
+		List<Future<?>> futures = new ArrayList<Future<?>>(tasks.size());
+		try
 		{
-			fd = fileIterator.next();
-			setProgress(fileCount, 0, totalFileCount);
-			//message("counting", fileCount);
-			fileCount++;
+			for (int i=1; i<tasks.size(); i++) {
+				futures.add(segmentExecutor.submit(tasks.get(i)));
+			}
+			tasks.get(0).run();
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		}
+		catch (RejectedExecutionException ree)
+		{
+			throw new CancellationException("Segment threads shut down");
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt(); // stop claiming files
+			throw new CancellationException("Interrupted waiting for segments");
+		}
+		catch (ExecutionException ee)
+		{
+			if (ee.getCause() instanceof RuntimeException) {
+				throw (RuntimeException)ee.getCause();
+			}
+			if (ee.getCause() instanceof Error) {
+				throw (Error)ee.getCause();
+			}
+			throw new IllegalStateException(ee.getCause());
+		}
+		finally
+		{
+			// stop any segments still being counted after one has failed
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
 		}
-		return fd;
+	}
+
+	/**
+	 * @return true if the files are read by FilePrefetchers before being counted
+	 */
+	boolean isPrefetching()
+	{
+		return (prefetchQueue != null);
+	}
+
+	/**
+	 * A FileCounter has stopped, whether it ran out of files or failed
+	 */
+	void counterFinished()
+	{
+		if (prefetchQueue != null) {
+			prefetchQueue.counterFinished();
+		}
+	}
+
+	/**
+	 * Take the next file read by the FilePrefetchers, waiting for one if necessary
+	 * @return the file or null if there are none left
+	 * @throws InterruptedException if the count is cancelled while waiting
+	 */
+	PrefetchQueue.PrefetchedFile takePrefetchedFile() throws InterruptedException
+	{
+		return prefetchQueue.take();
+	}
+
+	/**
+	 * @return a stripe for a FileCounter to add the totals of each file to as it is counted,
+	 * or null if the totals are only shown at the end
+	 */
+	LiveTotals.Stripe newLiveTotalsStripe()
+	{
+		return (liveTotals == null ? null : liveTotals.newStripe());
+	}
+
+	/**
+	 * @return the numbering of file types shared by the SummaryDetails of the count
+	 */
+	FileTypeIds getFileTypeIds()
+	{
+		return fileTypeIds;
+	}
+
+	/**
+	 * @param fileType name of a file type, e.g. java
+	 * @return the number of the file type in the SummaryDetails
+	 */
+	int getFileTypeId(String fileType)
+	{
+		return fileTypeIds.getId(fileType);
 	}
 
 	/**
@@ -142,6 +455,79 @@ public class FileCounterManager extends Task
 		return cis;
 	}
 
+	/**
+	 * Get the selected counters for the defined file compiled so they can be applied in a single pass
+	 * @param fileDetails
+	 * @return the combined pattern; will be empty if no counters have been selected
+	 */
+	synchronized CombinedPattern getCombinedPattern(FileDetails fileDetails)
+	{
+		String fileType = fileDetails.getFileType().toLowerCase();
+		CombinedPattern cp = combinedPatternCache.get(fileType);
+
+		if (cp == null)
+		{
+			cp = new CombinedPattern(getSelectedPatterns(fileDetails));
+			combinedPatternCache.put(fileType, cp);
+		}
+
+		return cp;
+	}
+
+	/**
+	 * Files are only sniffed for binary, generated or minified content when they are
+	 * of an unknown type that the user has chosen to count as some file type
+	 * @param fileDetails
+	 * @return true if the file should be checked by a ContentSniffer before it is counted
+	 */
+	boolean isSniffing(FileDetails fileDetails)
+	{
+		return (unknownFilesFileType != null && !fileTypes.isKnownFile(fileDetails));
+	}
+
+	/**
+	 * @return true if files identical to one already counted should reuse its totals
+	 */
+	boolean isSkippingDuplicates()
+	{
+		return (countedFiles != null);
+	}
+
+	/**
+	 * Find a file that has been counted with the same contents and the same CountItems.
+	 * Identical files of different file types don't share their totals, as their
+	 * lines are counted by different CountItems.
+	 * @param fingerprint
+	 * @param counters the CountItems of the file, from {@link #getCombinedPattern(FileDetails)}
+	 * @return the counted file or null if there isn't one yet
+	 */
+	FileDetails getCountedFile(FileFingerprint fingerprint, CombinedPattern counters)
+	{
+		ConcurrentMap<FileFingerprint, FileDetails> files = countedFiles.get(counters);
+		return (files == null ? null : files.get(fingerprint));
+	}
+
+	/**
+	 * Record a file that has been counted so that identical files can reuse its totals.
+	 * If two identical files are counted at the same time the first to finish is kept.
+	 * @param fingerprint
+	 * @param counters the CountItems the file was counted with
+	 * @param details
+	 */
+	void addCountedFile(FileFingerprint fingerprint, CombinedPattern counters, FileDetails details)
+	{
+		ConcurrentMap<FileFingerprint, FileDetails> files = countedFiles.get(counters);
+		if (files == null)
+		{
+			ConcurrentMap<FileFingerprint, FileDetails> added = new ConcurrentHashMap<FileFingerprint, FileDetails>();
+			files = countedFiles.putIfAbsent(counters, added);
+			if (files == null) {
+				files = added;
+			}
+		}
+		files.putIfAbsent(fingerprint, details);
+	}
+
 	/**
 	 * A FileCounter encountered an error
 	 * @param ex
@@ -155,6 +541,20 @@ public class FileCounterManager extends Task
 		errorCount++;
 	}
 
+	/**
+	 * A CountItem took too long to match a file so the file was counted without it
+	 * @param countItem
+	 * @param details
+	 */
+	synchronized void raiseTimeout(CountItem countItem, FileDetails details)
+	{
+		message("timeoutMessage", countItem.name, details.getPath());
+		log.warning("Matching "+countItem.name+" timed out on "+details.getPath());
+		String error = String.format(TIMEOUT_ERROR, countItem.name);
+		String previous = errors.get(details.getPath());
+		errors.put(details.getPath(), (previous == null ? error : previous+"; "+error));
+	}
+
 	@Override public Object doInBackground() throws Exception
 	{
 		log.entering("FileCounterManager", "doInBackground");
@@ -165,31 +565,31 @@ public class FileCounterManager extends Task
 		setProgress(0f);
 
 		// create and start the required number of FileCounters
-		tGroup = new ThreadGroup("FileCounters");
 		List<FileCounter> fileCounters = new ArrayList<FileCounter>(threadCount);
+		List<Future<?>> futures = new ArrayList<Future<?>>(threadCount + prefetcherCount);
+		for (int i=0; i<prefetcherCount; i++)
+		{
+			futures.add(executor.submit(new FilePrefetcher(this, prefetchQueue, charset)));
+		}
 		FileCounter fc;
 		for (int i=0; i<threadCount; i++)
 		{
 			fc = new FileCounter(this, charset, countBlankLines);
 			fileCounters.add(fc);
-			new Thread(tGroup, fc, "FileCounter-"+i).start();
+			futures.add(executor.submit(fc));
 		}
 
 		// wait for all the tasks to complete
 		try
 		{
-			int finishedTotal;
-			do
+			for (Future<?> future : futures)
 			{
-				finishedTotal = 0;
-				for (FileCounter counter : fileCounters)
-				{
-					if (counter.isFinished()) {
-						finishedTotal++;
-					}
+				try {
+					waitFor(future);
+				} catch (ExecutionException ee) {
+					log.log(Level.SEVERE, "FileCounter failed", ee.getCause());
 				}
-				Thread.sleep(500); // sleep for half a second
-			} while (finishedTotal < fileCounters.size());
+			}
 
 			for (FileCounter counter : fileCounters)
 			{
@@ -199,6 +599,21 @@ public class FileCounterManager extends Task
 		catch (InterruptedException ie)
 		{
 			log.fine("FileCounterManager interrupted");
+			executor.shutdownNow();
+		}
+		finally
+		{
+			executor.shutdown();
+			if (segmentExecutor != null) {
+				segmentExecutor.shutdownNow();
+			}
+			if (prefetchQueue != null)
+			{
+				prefetchQueue.close();
+				readAheadMetrics = getResourceMap().getString("readAhead", prefetchQueue.getMetrics());
+				log.info(readAheadMetrics);
+				skipDroppedFiles();
+			}
 		}
 
 		log.exiting("FileCounterManager", "doInBackground");
@@ -207,23 +622,98 @@ public class FileCounterManager extends Task
 	}
 
 	/**
-	 * Add a list of FileDetails
-	 * @param detailsList
+	 * Add the files read ahead that no FileCounter was left to count, because they had all
+	 * failed or the count was cancelled, to the results as skipped so no claimed file goes missing
+	 */
+	private void skipDroppedFiles()
+	{
+		List<FileDetails> dropped = prefetchQueue.takeDroppedFiles();
+		if (dropped.isEmpty()) {
+			return;
+		}
+
+		log.warning(dropped.size()+" files read ahead were not counted");
+		for (FileDetails details : dropped)
+		{
+			details.resetTotals();
+			details.setSkipReason(PrefetchQueue.NOT_COUNTED);
+			summaryDetails.incrementSkippedFiles(details.getSize());
+			fileDone(details.getSize());
+		}
+		addFileDetailsResults(dropped);
+	}
+
+	/**
+	 * Add a list of FileDetails; doesn't lock so may be called by any number of FileCounters
+	 * @param detailsList the results, which the FileCounter must not change afterwards
+	 */
+	void addFileDetailsResults(List<FileDetails> detailsList)
+	{
+		resultsDelivery.add(detailsList);
+	}
+
+	/**
+	 * Show how far through the files the count is; called on the event dispatch thread.
+	 * The progress is also drawn on the console, if there is one, and every PROGRESS_LOG_INTERVAL
+	 * the message is logged, to follow a count without the GUI.
 	 */
-	synchronized void addFileDetailsResults(List<FileDetails> detailsList)
+	private void updateProgress()
 	{
-		detailsListCache.addAll(detailsList);
-		processedFileCount += detailsList.size();
-		if (detailsListCache.size() >= DETAILS_CACHE_SIZE)
+		long now = System.nanoTime();
+		progress.update(filesDone.get(), bytesDone.get(), now);
+		setProgress(progress.getProgress());
+		if (progressLine != null) {
+			progressLine.draw(progress);
+		}
+
+		int eta = progress.getEta();
+		if (eta < 0) {
+			return; // nothing to estimate from yet
+		}
+		Object[] args = {progress.getFilesDone(), progress.getTotalFiles(), progress.getBytesDone() / MB,
+			progress.getTotalBytes() / MB, progress.getElapsedSeconds(), progress.getBytesPerSecond() / MB, eta};
+		message("processing", args);
+		if (now - progressLogged >= PROGRESS_LOG_INTERVAL)
 		{
-			rtm.addFileDetails(detailsListCache);
-			detailsListCache.clear();
+			log.info(getResourceMap().getString("processing", args));
+			progressLogged = now;
+		}
+	}
 
-			// using class variables to minimise primitive creation
-			timeSoFar = new Date().getTime() - start.getTime();
-			timeSoFarSeconds = timeSoFar / 1000f;
-			eta = (int)((totalFileCount - processedFileCount) * (timeSoFar / processedFileCount)) / 1000;
-			message("processing", processedFileCount, timeSoFarSeconds, eta);
+	/**
+	 * Show the totals so far in the summary table; called on the event dispatch thread
+	 */
+	private void refreshLiveTotals()
+	{
+		// a tick queued before the count finished mustn't replace the final totals
+		if (liveTotalsTimer.isRunning()) {
+			srtm.setSummaryDetails(liveTotals.snapshot());
+		}
+	}
+
+	/**
+	 * Wait for a FileCounter to finish, changing the number of active FileCounters
+	 * every ADJUST_INTERVAL while waiting if it is chosen automatically
+	 */
+	private void waitFor(Future<?> future) throws InterruptedException, ExecutionException
+	{
+		if (concurrency == null)
+		{
+			future.get();
+			return;
+		}
+
+		while (true)
+		{
+			try
+			{
+				future.get(ADJUST_INTERVAL, TimeUnit.MILLISECONDS);
+				return;
+			}
+			catch (TimeoutException te)
+			{
+				concurrency.adjust(filesDone.get(), bytesDone.get());
+			}
 		}
 	}
 
@@ -232,31 +722,49 @@ public class FileCounterManager extends Task
 		log.entering("FileCounterManager", "finished");
 
 		// add any final details
-		if (!detailsListCache.isEmpty())
+		resultsDelivery.finish();
+		progressTimer.stop();
+		if (progressLine != null)
 		{
-			rtm.addFileDetails(detailsListCache);
-			detailsListCache.clear();
+			progress.update(filesDone.get(), bytesDone.get(), System.nanoTime());
+			progressLine.finish(progress);
 		}
 
+		if (liveTotalsTimer != null) {
+			liveTotalsTimer.stop();
+		}
 		srtm.setSummaryDetails(summaryDetails);
+		fileCount = fileQueue.getClaimedCount();
 		long diff = new Date().getTime() - start.getTime();
 		float time = (float)diff/1000;
-		message("finishedMessage", fileCount, errorCount, time);
-		sccView.countFinished(fileCount, time, errors);
+		if (readAheadMetrics == null) {
+			message("finishedMessage", fileCount, errorCount, time);
+		} else {
+			message("finishedReadAheadMessage", fileCount, errorCount, time, readAheadMetrics);
+		}
+		if (sccView != null) {
+			sccView.countFinished(fileCount, time, getActiveThreadCount(), errors, summaryDetails);
+		}
 		log.exiting("FileCounterManager", "finished");
 	}
 
 	@Override protected void interrupted(InterruptedException arg0)
 	{
 		log.entering("FileCounterManager", "interrupted");
-		tGroup.interrupt();
+		executor.shutdownNow();
+		if (segmentExecutor != null) {
+			segmentExecutor.shutdownNow();
+		}
 		log.exiting("FileCounterManager", "interrupted");
 	}
 
 	@Override protected void cancelled()
 	{
 		log.entering("FileCounterManager", "cancelled");
-		tGroup.interrupt();
+		executor.shutdownNow();
+		if (segmentExecutor != null) {
+			segmentExecutor.shutdownNow();
+		}
 		log.exiting("FileCounterManager", "cancelled");
 	}
 
@@ -0,0 +1,413 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.swing.tree.DefaultMutableTreeNode;
+import nrs.scc.tab2.CountItem;
+import nrs.scc.tab2.FileType;
+import nrs.scc.tab2.FileTypes;
+import nrs.scc.tab2.FileTypesSAXParser;
+import org.jdesktop.application.Application;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLReaderFactory;
+
+/**
+ * Checks that a file gets the same total, blank and counted lines whether it is mapped whole,
+ * streamed a window at a time or split into segments. Files with \n, \r\n and bare \r line
+ * terminators, with and without a final terminator, empty files and multi-byte character sets
+ * are counted each way. The window, read and segment sizes are made small so that small files
+ * cross many of their boundaries. The total and blank lines are also checked against a simple
+ * count of the text, and the counted lines of a few files against the lines worked out by hand.
+ * <p>
+ * Has no dependencies beyond the libraries of the application; run with <code>ant test</code>.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+public class FileCounterTest
+{
+	private static final String DEFAULT_FILE_TYPES = "/nrs/scc/tab2/filetypes.xml";
+	/** the extensions of the files counted; txt has no CountItems */
+	private static final String[] EXTENSIONS = {"java", "sql", "xml", "txt"};
+	/** files with CountItems are only split if they are all ASCII */
+	private static final String[] CHARSETS = {"UTF-8", "UTF-16", "ISO-8859-1", "US-ASCII"};
+	private static final String[] LINE_ENDS = {"\n", "\r\n", "\r", null};
+	private static final int FILES_EACH = 3;
+
+	private static final int WINDOW_SIZE = 512;
+	/** odd, so that multi-byte chars are split between reads */
+	private static final int READ_SIZE = 7;
+	private static final int MIN_SEGMENT_SIZE = 256;
+	/** segments each large file is split into, whatever the number of processors */
+	private static final int SEGMENTS = 8;
+
+	private final FileTypes fileTypes;
+	private final File dir;
+	private final Random random = new Random(20090401);
+	private int checks;
+	private int failures;
+
+	/**
+	 * A way of counting a file
+	 */
+	private class Path
+	{
+		final String name;
+		final FileCounter fileCounter;
+		final SegmentCountingManager manager;
+
+		/**
+		 * @param name
+		 * @param charset
+		 * @param countBlankLines
+		 * @param streamingThreshold files larger than this are streamed
+		 * @param split true to split files into segments
+		 */
+		Path(String name, String charset, boolean countBlankLines, long streamingThreshold, boolean split)
+		{
+			this.name = name;
+			manager = new SegmentCountingManager(fileTypes, charset, countBlankLines, split);
+			fileCounter = new FileCounter(manager, charset, countBlankLines);
+			fileCounter.setSizes(streamingThreshold, WINDOW_SIZE, READ_SIZE, MIN_SEGMENT_SIZE);
+		}
+
+		FileDetails count(File file)
+		{
+			FileDetails details = new FileDetails(file);
+			fileCounter.countFile(details);
+			return details;
+		}
+	}
+
+	/**
+	 * Splits large files into more segments than there are processors, and counts the files
+	 * it splits so the test can check they were split
+	 */
+	private static class SegmentCountingManager extends FileCounterManager
+	{
+		int splitFiles;
+
+		SegmentCountingManager(FileTypes fileTypes, String charset, boolean countBlankLines, boolean split)
+		{
+			super(new TestApplication(), null, 0, new ArrayList<FileDetails>().iterator(), fileTypes,
+				new ResultsTableModel(new String[0]), new SummaryResultsTableModel(new String[0]), charset, 1,
+				countBlankLines, null, false, false, 0, (split ? 1 : 0), 0);
+		}
+
+		@Override int getSegmentThreads()
+		{
+			return SEGMENTS;
+		}
+
+		@Override void runSegments(List<Runnable> tasks)
+		{
+			if (tasks.size() > 1) {
+				splitFiles++;
+			}
+			super.runSegments(tasks);
+		}
+	}
+
+	/**
+	 * Provides the resources of the Tasks without starting the GUI
+	 */
+	private static class TestApplication extends Application
+	{
+		@Override protected void startup()
+		{
+		}
+	}
+
+	FileCounterTest(FileTypes fileTypes, File dir)
+	{
+		this.fileTypes = fileTypes;
+		this.dir = dir;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		File dir = File.createTempFile("scc", "test");
+		dir.delete();
+		dir.mkdir();
+
+		FileCounterTest test = new FileCounterTest(loadFileTypes(), dir);
+		try
+		{
+			test.testByHand();
+			test.testPaths();
+		}
+		finally
+		{
+			for (File file : dir.listFiles()) {
+				file.delete();
+			}
+			dir.delete();
+		}
+
+		System.out.println(test.checks+" checks, "+test.failures+" failures");
+		System.exit(test.failures == 0 ? 0 : 1);
+	}
+
+	/**
+	 * Load the default file types with all their CountItems selected
+	 */
+	private static FileTypes loadFileTypes() throws Exception
+	{
+		XMLReader reader = XMLReaderFactory.createXMLReader();
+		FileTypesSAXParser saxParser = new FileTypesSAXParser(new DefaultMutableTreeNode());
+		reader.setContentHandler(saxParser);
+		reader.setErrorHandler(saxParser);
+		InputStream is = FileCounterTest.class.getResourceAsStream(DEFAULT_FILE_TYPES);
+		try {
+			reader.parse(new InputSource(is));
+		} finally {
+			is.close();
+		}
+
+		Map<String, FileType> ftMap = saxParser.getFileTypes();
+		for (FileType ft : ftMap.values())
+		{
+			Enumeration e = ft.children();
+			while (e.hasMoreElements()) {
+				((CountItem)e.nextElement()).setSelected(true);
+			}
+		}
+		return new FileTypes(ftMap);
+	}
+
+	/**
+	 * Count small files whose lines have been worked out by hand, each of the ways
+	 */
+	void testByHand() throws IOException
+	{
+		List<Path> paths = getPaths("UTF-8", true);
+		// text, then the total, blank and counted lines with blank lines counted; an empty last
+		// line is counted as a line, and as a counted line if it ends a run of blank lines
+		checkByHand(paths, "empty.java", "", 1, 0, 0);
+		checkByHand(paths, "one.java", "int x;", 1, 0, 0);
+		checkByHand(paths, "lf.java", "int x;\n", 2, 0, 0);
+		checkByHand(paths, "crlf.java", "int x;\r\nint y;", 2, 0, 0);
+		checkByHand(paths, "cr.java", "int x;\rint y;\r", 3, 0, 0);
+		checkByHand(paths, "blank.java", "\n", 2, 1, 2);
+		checkByHand(paths, "blanks.java", "  \r\n\t\r\n", 3, 2, 3);
+		checkByHand(paths, "crcrlf.java", "int x;\r\r\n", 3, 1, 2);
+		checkByHand(paths, "blankend.java", "int x;\n \t", 2, 1, 1);
+		checkByHand(paths, "comment.java", "// a\r\n/* b\r c */\rint x;", 4, 0, 3);
+		checkByHand(paths, "javadoc.java", "/**\n * \u00e9\u20ac\n */\n\nimport a.b;\nclass A {}", 6, 1, 6);
+		checkByHand(paths, "query.sql", "--\r/* x */\rselect 1\r", 4, 0, 2);
+		checkByHand(paths, "page.xml", "<?xml version=\"1.0\"?>\r\n<!--\r\n-->\r\n<a/>", 4, 0, 3);
+		checkByHand(paths, "notes.txt", "a\n\n\nb\n", 5, 2, 2);
+	}
+
+	private void checkByHand(List<Path> paths, String name, String text, int totalLines, int blankLines,
+		int countedLines) throws IOException
+	{
+		File file = write(name, text, "UTF-8");
+		for (Path path : paths)
+		{
+			FileDetails details = path.count(file);
+			check(details, name+" "+path.name, totalLines, blankLines, countedLines);
+		}
+	}
+
+	/**
+	 * Count generated files of each type, character set and line terminator each of the ways
+	 * and check they all agree
+	 */
+	void testPaths() throws IOException
+	{
+		for (String charset : CHARSETS)
+		{
+			for (boolean countBlankLines : new boolean[] {true, false})
+			{
+				List<Path> paths = getPaths(charset, countBlankLines);
+				for (String extension : EXTENSIONS)
+				{
+					for (String lineEnd : LINE_ENDS)
+					{
+						for (int i=0; i<FILES_EACH; i++)
+						{
+							boolean finalLineEnd = (i % 2 == 0);
+							String text = generate(charset, lineEnd, finalLineEnd, (i == 0 ? 100 : 4000));
+							String name = "gen"+i+"."+extension;
+							File file = write(name, text, charset);
+							checkPaths(paths, file, name+" "+charset+" "+describe(lineEnd)+
+								(finalLineEnd ? "" : " no final terminator")+(countBlankLines ? "" : " blank lines not counted"),
+								text, countBlankLines);
+						}
+					}
+				}
+
+				// only files in ASCII compatible character sets are split
+				Path split = paths.get(paths.size()-1);
+				if (FileCounter.isAsciiCompatible(Charset.forName(charset)))
+				{
+					checks++;
+					if (split.manager.splitFiles == 0)
+					{
+						failures++;
+						System.out.println("FAILED: no "+charset+" file was split");
+					}
+				}
+			}
+		}
+	}
+
+	private void checkPaths(List<Path> paths, File file, String description, String text, boolean countBlankLines)
+	{
+		int[] lines = countLines(text);
+		FileDetails mapped = null;
+		for (Path path : paths)
+		{
+			FileDetails details = path.count(file);
+			if (mapped == null) {
+				mapped = details;
+			}
+			check(details, description+" "+path.name, lines[0], (countBlankLines ? lines[1] : 0), mapped.countedLines);
+		}
+	}
+
+	/**
+	 * @return the ways of counting a file; mapped comes first and split last
+	 */
+	private List<Path> getPaths(String charset, boolean countBlankLines)
+	{
+		List<Path> paths = new ArrayList<Path>(3);
+		paths.add(new Path("mapped", charset, countBlankLines, Long.MAX_VALUE, false));
+		paths.add(new Path("streamed", charset, countBlankLines, 0, false));
+		paths.add(new Path("split", charset, countBlankLines, Long.MAX_VALUE, true));
+		return paths;
+	}
+
+	private void check(FileDetails details, String description, int totalLines, int blankLines, int countedLines)
+	{
+		checks++;
+		if (details.totalLines != totalLines || details.blankLines != blankLines || details.countedLines != countedLines)
+		{
+			failures++;
+			System.out.println("FAILED: "+description+" expected TL:"+totalLines+", BL:"+blankLines+", CL:"+countedLines+
+				" but got TL:"+details.totalLines+", BL:"+details.blankLines+", CL:"+details.countedLines);
+		}
+	}
+
+	/**
+	 * Count the lines of the text the simplest way possible. As with the new line pattern
+	 * lines were first counted with, the text after the last line terminator is always a line,
+	 * but it is only a blank line if it isn't empty.
+	 * @return the total and blank lines
+	 */
+	static int[] countLines(String text)
+	{
+		int totalLines = 1;
+		int blankLines = 0;
+		boolean blank = true;
+		boolean empty = true;
+		for (int i=0; i<text.length(); i++)
+		{
+			char c = text.charAt(i);
+			if (c == '\n' || c == '\r')
+			{
+				totalLines++;
+				if (blank) {
+					blankLines++;
+				}
+				if (c == '\r' && i+1 < text.length() && text.charAt(i+1) == '\n') {
+					i++;
+				}
+				blank = empty = true;
+			}
+			else
+			{
+				empty = false;
+				if (c != ' ' && c != '\t' && c != '\u000B' && c != '\f') {
+					blank = false;
+				}
+			}
+		}
+		if (!empty && blank) {
+			blankLines++;
+		}
+		return new int[] {totalLines, blankLines};
+	}
+
+	/**
+	 * Generate the text of a file from lines its CountItems match and lines they don't.
+	 * Multi-line comments are kept well inside the window so the streamed count can find them.
+	 * @param lineEnd the line terminator, or null to mix them
+	 * @param finalLineEnd true if the last line is terminated
+	 * @param lineCount the number of lines
+	 */
+	private String generate(String charset, String lineEnd, boolean finalLineEnd, int lineCount)
+	{
+		String[] lines = {"int x = 1;", "  select * from t;", "\t<a href=\"x\">b</a>", "# not a comment here",
+			"class A", "  @Override", "import a.b;", "// note", "--", "<?xml version=\"1.0\"?>", "", " ", "\t \t",
+			"\u000B", "/* one */", "/* two\n   lines */", "/**\n * doc\n */", "<!-- one -->", "<!--\n  two\n-->",
+			"text with \u00e9", "\u20ac in the middle \u00e9\u00e9", "\ud834\udd1e clef", "next\u0085line",
+			"line\u2028separator"};
+		CharsetEncoder encoder = Charset.forName(charset).newEncoder();
+		String[] terminators = {"\n", "\r\n", "\r"};
+
+		StringBuilder sb = new StringBuilder(lineCount * 16);
+		for (int i=0; i<lineCount; i++)
+		{
+			String line = lines[random.nextInt(lines.length)];
+			if (!encoder.canEncode(line)) {
+				line = line.replaceAll("[^\\x00-\\x7f]", "?");
+			}
+			String terminator = (lineEnd == null ? terminators[random.nextInt(terminators.length)] : lineEnd);
+			sb.append(line.replace("\n", terminator));
+			if (i < lineCount-1 || finalLineEnd) {
+				sb.append(terminator);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String describe(String lineEnd)
+	{
+		if (lineEnd == null) {
+			return "mixed";
+		}
+		return lineEnd.replace("\r", "CR").replace("\n", "LF");
+	}
+
+	private File write(String name, String text, String charset) throws IOException
+	{
+		File file = new File(dir, name);
+		OutputStream os = new FileOutputStream(file);
+		try {
+			os.write(text.getBytes(charset));
+		} finally {
+			os.close();
+		}
+		return file;
+	}
+}
@@ -37,6 +37,12 @@ public class FileDetails
 	public int blankLines;
 	public int countedLines;
 	public int sourceLines;
+	/** path of the identical file whose totals were reused, or null */
+	private String duplicateOf;
+	/** why the file wasn't counted, or null */
+	private String skipReason;
+	/** nanoseconds spent counting the file */
+	private long countTime;
 
 	private final static char DOT = '.';
 	
@@ -49,6 +55,24 @@ public class FileDetails
 		lastModified = file.lastModified();
 	}
 
+	/**
+	 * Constructor used when the details of the file have already been read,
+	 * e.g. by the file selection
+	 * @param filePath full path to the file
+	 * @param fileName file name excluding the path
+	 * @param fileExtension file extension as lower case, or null
+	 * @param size size of the file
+	 * @param lastModified modified time of the file
+	 */
+	public FileDetails(String filePath, String fileName, String fileExtension, long size, long lastModified)
+	{
+		this.filePath = filePath;
+		this.fileName = fileName;
+		this.fileExtension = fileExtension;
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
 	/**
 	 * Constructor used for creating an object just to hold the totals
 	 */
@@ -60,6 +84,54 @@ public class FileDetails
 	public void resetTotals()
 	{
 		totalLines = blankLines = countedLines = sourceLines = 0;
+		duplicateOf = null;
+		skipReason = null;
+		countTime = 0;
+	}
+
+	/**
+	 * Reuse the totals of an identical file rather than counting this one
+	 * @param original the file with the same contents that has been counted
+	 */
+	void copyTotals(FileDetails original)
+	{
+		totalLines = original.totalLines;
+		blankLines = original.blankLines;
+		countedLines = original.countedLines;
+		duplicateOf = original.getPath();
+	}
+
+	/**
+	 * Get the file this is a copy of
+	 * @return path of the identical file whose totals were reused, or null if this file was counted
+	 */
+	public String getDuplicateOf()
+	{
+		return duplicateOf;
+	}
+
+	/**
+	 * Get why the file wasn't counted
+	 * @return binary, minified or generated; null if the file was counted
+	 */
+	public String getSkipReason()
+	{
+		return skipReason;
+	}
+
+	void setSkipReason(String skipReason)
+	{
+		this.skipReason = skipReason;
+	}
+
+	long getCountTime()
+	{
+		return countTime;
+	}
+
+	void setCountTime(long countTime)
+	{
+		this.countTime = countTime;
 	}
 
 	/**
@@ -157,6 +229,15 @@ public class FileDetails
 		return new Date(lastModified);
 	}
 
+	/**
+	 * Get the modified time
+	 * @return milliseconds since the epoch
+	 */
+	public long getLastModified()
+	{
+		return lastModified;
+	}
+
 	/**
 	 * Get the File reference
 	 * @return the file
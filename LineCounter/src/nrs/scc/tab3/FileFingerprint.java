@@ -0,0 +1,199 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Identifies the contents of a file by its size and a 128 bit MurmurHash3 of its bytes,
+ * so that identical copies of a file only have to be counted once.
+ * <p>
+ * Immutable; used as a key in the table of files already counted.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class FileFingerprint
+{
+	private static final long C1 = 0x87c37b91114253d5L;
+	private static final long C2 = 0x4cf5ad432745937fL;
+	private static final int BLOCK_SIZE = 16;
+
+	private final long size;
+	private final long hash1;
+	private final long hash2;
+
+	private FileFingerprint(long size, long hash1, long hash2)
+	{
+		this.size = size;
+		this.hash1 = hash1;
+		this.hash2 = hash2;
+	}
+
+	/**
+	 * Fingerprint the remaining bytes of a buffer. The position of the buffer isn't changed.
+	 * @param bytes the whole contents of a file
+	 * @return the fingerprint
+	 */
+	static FileFingerprint of(ByteBuffer bytes)
+	{
+		Hasher hasher = new Hasher();
+		ByteBuffer in = bytes.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		hasher.blocks(in);
+		return hasher.finish(in);
+	}
+
+	/**
+	 * Fingerprint a file a buffer at a time
+	 * @param channel the file, read from its current position to the end
+	 * @param buffer used to read the file; must hold at least 16 bytes
+	 * @return the fingerprint
+	 * @throws IOException if the file can't be read
+	 */
+	static FileFingerprint of(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		Hasher hasher = new Hasher();
+		buffer.clear();
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		while (channel.read(buffer) != -1)
+		{
+			buffer.flip();
+			hasher.blocks(buffer);
+			buffer.compact(); // keeps any partial block
+		}
+		buffer.flip();
+		return hasher.finish(buffer);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof FileFingerprint)) {
+			return false;
+		}
+		FileFingerprint fp = (FileFingerprint)obj;
+		return (size == fp.size && hash1 == fp.hash1 && hash2 == fp.hash2);
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return (int)hash1;
+	}
+
+	@Override
+	public String toString()
+	{
+		return Long.toHexString(hash1)+Long.toHexString(hash2)+"/"+size;
+	}
+
+	/**
+	 * The state of MurmurHash3_x64_128 between blocks
+	 */
+	private static class Hasher
+	{
+		private long h1;
+		private long h2;
+		private long length;
+
+		/**
+		 * Hash as many whole blocks as the buffer holds, leaving any partial block
+		 */
+		void blocks(ByteBuffer in)
+		{
+			long k1, k2;
+			while (in.remaining() >= BLOCK_SIZE)
+			{
+				k1 = in.getLong();
+				k2 = in.getLong();
+				length += BLOCK_SIZE;
+
+				h1 ^= mixK1(k1);
+				h1 = Long.rotateLeft(h1, 27);
+				h1 += h2;
+				h1 = h1 * 5 + 0x52dce729;
+
+				h2 ^= mixK2(k2);
+				h2 = Long.rotateLeft(h2, 31);
+				h2 += h1;
+				h2 = h2 * 5 + 0x38495ab5;
+			}
+		}
+
+		/**
+		 * Hash the final partial block and finish the hash
+		 */
+		FileFingerprint finish(ByteBuffer in)
+		{
+			int remaining = in.remaining();
+			long k1 = 0;
+			long k2 = 0;
+			for (int i=remaining-1; i>=8; i--) {
+				k2 = (k2 << 8) | (in.get(in.position() + i) & 0xFF);
+			}
+			for (int i=Math.min(remaining, 8)-1; i>=0; i--) {
+				k1 = (k1 << 8) | (in.get(in.position() + i) & 0xFF);
+			}
+			length += remaining;
+			if (remaining > 8) {
+				h2 ^= mixK2(k2);
+			}
+			if (remaining > 0) {
+				h1 ^= mixK1(k1);
+			}
+
+			h1 ^= length;
+			h2 ^= length;
+			h1 += h2;
+			h2 += h1;
+			h1 = fmix(h1);
+			h2 = fmix(h2);
+			h1 += h2;
+			h2 += h1;
+
+			return new FileFingerprint(length, h1, h2);
+		}
+
+		private static long mixK1(long k1)
+		{
+			k1 *= C1;
+			k1 = Long.rotateLeft(k1, 31);
+			return k1 * C2;
+		}
+
+		private static long mixK2(long k2)
+		{
+			k2 *= C2;
+			k2 = Long.rotateLeft(k2, 33);
+			return k2 * C1;
+		}
+
+		private static long fmix(long k)
+		{
+			k ^= k >>> 33;
+			k *= 0xff51afd7ed558ccdL;
+			k ^= k >>> 33;
+			k *= 0xc4ceb9fe1a85ec53L;
+			k ^= k >>> 33;
+			return k;
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The first stage of counting on slow drives. Claims files from the FileCounterManager,
+ * opens them and reads them into memory, then hands them to the FileCounters through
+ * the {@link PrefetchQueue} so that waiting on the drive overlaps with counting.
+ * <p>
+ * Binary, generated and minified files are recognised here, before they are read, so
+ * that they don't take up the queue's byte budget. Files too large to map are only
+ * opened; the FileCounter streams them.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+class FilePrefetcher implements Runnable
+{
+	private final FileCounterManager fcManager;
+	private final PrefetchQueue queue;
+	/** null if the files can't be sniffed without decoding them */
+	private final ContentSniffer sniffer;
+	private final static Logger log = Logger.getLogger(FilePrefetcher.class.getName());
+
+	/**
+	 * @param fcManager supplies the files to read
+	 * @param queue receives the files once read
+	 * @param charsetName character set the files are counted in
+	 */
+	FilePrefetcher(FileCounterManager fcManager, PrefetchQueue queue, String charsetName)
+	{
+		this.fcManager = fcManager;
+		this.queue = queue;
+		sniffer = (FileCounter.isAsciiCompatible(Charset.forName(charsetName)) ? new ContentSniffer() : null);
+	}
+
+	@Override public void run()
+	{
+		log.entering("FilePrefetcher", "run");
+
+		FileQueue.Chunk chunk = new FileQueue.Chunk();
+		try
+		{
+			// the queue is closed early if every FileCounter has failed
+			while (!Thread.currentThread().isInterrupted() && !queue.isClosed() && fcManager.claimFiles(chunk))
+			{
+				for (int i=chunk.start; i<chunk.end && !Thread.currentThread().isInterrupted(); i++)
+				{
+					prefetch(fcManager.getFileDetails(i));
+				}
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			log.fine("FilePrefetcher interrupted");
+		}
+		finally
+		{
+			queue.prefetcherFinished();
+		}
+
+		log.exiting("FilePrefetcher", "run");
+	}
+
+	/**
+	 * Open and read a file and queue it to be counted
+	 */
+	private void prefetch(FileDetails details) throws InterruptedException
+	{
+		if (queue.isClosed())
+		{
+			// the rest of the chunk claimed is reported as not counted
+			queue.drop(details);
+			return;
+		}
+
+		FileChannel channel = null;
+		try
+		{
+			channel = new FileInputStream(details.getFile()).getChannel();
+			long size = channel.size();
+			String skipReason = null;
+			if (sniffer != null && fcManager.isSniffing(details)) {
+				skipReason = sniffer.getSkipReason(channel, details.getPath());
+			}
+
+			PrefetchQueue.PrefetchedFile file;
+			if (skipReason != null || size > FileCounter.STREAMING_THRESHOLD)
+			{
+				file = new PrefetchQueue.PrefetchedFile(details, channel, null, skipReason);
+			}
+			else
+			{
+				MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+				mapped.load();
+				file = new PrefetchQueue.PrefetchedFile(details, channel, mapped, null);
+			}
+
+			queue.put(file);
+			channel = null; // the FileCounter closes it
+		}
+		catch (IOException ioe)
+		{
+			fcManager.raiseException(ioe, details);
+			fcManager.fileDone(details.getSize());
+		}
+		finally
+		{
+			if (channel != null)
+			{
+				try {
+					channel.close();
+				} catch (IOException ioe) {
+					log.log(Level.FINE, "Cannot close "+details.getPath(), ioe);
+				}
+			}
+		}
+	}
+}
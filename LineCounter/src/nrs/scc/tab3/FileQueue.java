@@ -0,0 +1,155 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The files to count, handed out to the FileCounters in chunks without locking.
+ * <p>
+ * The files are held in an array with a running total of their sizes. A FileCounter
+ * claims the files from the cursor up to roughly chunkSize bytes further on with a
+ * single compare and set, so many small files go out together while a large file makes
+ * a chunk on its own. Chunks are sized so each thread gets about CHUNKS_PER_THREAD of
+ * them, which keeps the threads busy until near the end of the count.
+ * <p>
+ * The files can be handed out largest first so that a huge file isn't left to one
+ * thread at the end while the others sit idle; the small files that are left then
+ * fill in around it.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class FileQueue
+{
+	private static final int CHUNKS_PER_THREAD = 16;
+	private static final long MIN_CHUNK_SIZE = 64 * 1024;
+	/** so that results still reach the table steadily when the files are tiny */
+	private static final int MAX_CHUNK_FILES = 64;
+
+	/**
+	 * The range of files claimed by a FileCounter
+	 */
+	static final class Chunk
+	{
+		/** index of the first file in the chunk */
+		int start;
+		/** index after the last file in the chunk */
+		int end;
+	}
+
+	private final FileDetails[] files;
+	/** offsets[i] is the total size of the files before file i */
+	private final long[] offsets;
+	private final long chunkSize;
+	private final AtomicInteger cursor = new AtomicInteger();
+
+	/**
+	 * Orders files largest first, keeping files of the same size in their original order
+	 */
+	private static class LargestFirstComparator implements Comparator<FileDetails>
+	{
+		@Override
+		public int compare(FileDetails fd1, FileDetails fd2)
+		{
+			if (fd1.getSize() == fd2.getSize()) {
+				return 0;
+			}
+			return (fd1.getSize() > fd2.getSize() ? -1 : 1);
+		}
+	}
+
+	/**
+	 * @param files the files to count
+	 * @param threads number of FileCounters that will claim files
+	 * @param largestFirst true to hand the files out in order of descending size
+	 */
+	FileQueue(FileDetails[] files, int threads, boolean largestFirst)
+	{
+		if (largestFirst) {
+			Arrays.sort(files, new LargestFirstComparator());
+		}
+		this.files = files;
+		offsets = new long[files.length + 1];
+		for (int i=0; i<files.length; i++) {
+			offsets[i+1] = offsets[i] + files[i].getSize();
+		}
+		chunkSize = Math.max(MIN_CHUNK_SIZE, offsets[files.length] / ((long)threads * CHUNKS_PER_THREAD));
+	}
+
+	/**
+	 * Claim the next files to count
+	 * @param chunk receives the range of files claimed
+	 * @return false if there are no files left
+	 */
+	boolean claim(Chunk chunk)
+	{
+		int start, end;
+		do
+		{
+			start = cursor.get();
+			if (start >= files.length) {
+				return false;
+			}
+			end = getChunkEnd(start);
+		} while (!cursor.compareAndSet(start, end));
+
+		chunk.start = start;
+		chunk.end = end;
+		return true;
+	}
+
+	/**
+	 * Find the end of the chunk starting at a file; always holds at least one file
+	 */
+	private int getChunkEnd(int start)
+	{
+		int end = Arrays.binarySearch(offsets, start+1, offsets.length, offsets[start] + chunkSize);
+		if (end < 0) {
+			end = -end - 1; // include the file that takes the chunk over its size
+		}
+		return Math.max(start+1, Math.min(end, Math.min(files.length, start + MAX_CHUNK_FILES)));
+	}
+
+	/**
+	 * @param index
+	 * @return the file at the index
+	 */
+	FileDetails get(int index)
+	{
+		return files[index];
+	}
+
+	/**
+	 * @return total number of files
+	 */
+	int size()
+	{
+		return files.length;
+	}
+
+	/**
+	 * @return number of files that have been handed out to FileCounters
+	 */
+	int getClaimedCount()
+	{
+		return Math.min(cursor.get(), files.length);
+	}
+}
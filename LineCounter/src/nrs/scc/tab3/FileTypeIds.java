@@ -0,0 +1,80 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Numbers the file types found during a count so that totals can be kept in arrays
+ * indexed by the number rather than in maps keyed by the name. Shared by all the
+ * FileCounters of a count; only numbering a type that hasn't been seen before locks, and
+ * reading the names doesn't lock at all so the totals can be read while counting.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class FileTypeIds
+{
+	private final ConcurrentMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+	private final List<String> names = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * @param fileType name of the file type, e.g. java
+	 * @return the number of the file type, numbering it if it hasn't been seen before
+	 */
+	int getId(String fileType)
+	{
+		Integer id = ids.get(fileType);
+		if (id != null) {
+			return id;
+		}
+
+		synchronized (this)
+		{
+			id = ids.get(fileType);
+			if (id == null)
+			{
+				id = names.size();
+				names.add(fileType);
+				ids.put(fileType, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * @param id
+	 * @return the name of a numbered file type
+	 */
+	String getName(int id)
+	{
+		return names.get(id);
+	}
+
+	/**
+	 * @return number of file types numbered so far
+	 */
+	int size()
+	{
+		return names.size();
+	}
+}
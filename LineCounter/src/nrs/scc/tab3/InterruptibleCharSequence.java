@@ -0,0 +1,110 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Presents text to a regular expression matcher, checking every CHECK_INTERVAL chars read
+ * whether the matcher has run past its deadline or the thread has been interrupted.
+ * A pattern that backtracks catastrophically, such as .+? looking for the end of an
+ * unterminated comment, reads the same chars over and over so it is stopped by the
+ * deadline however long the text is.
+ * <p>
+ * Reused across files by a single CombinedMatcher.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class InterruptibleCharSequence implements CharSequence
+{
+	private static final int CHECK_INTERVAL = 1024;
+
+	private CharSequence text;
+	/** System.nanoTime() the matcher has to finish by */
+	private long deadline;
+	/** index of the CountItem being matched, passed on in any MatchTimeoutException */
+	private int index;
+	private int countdown = CHECK_INTERVAL;
+
+	/**
+	 * @param text the text to present
+	 */
+	void setText(CharSequence text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * Set the deadline for the matcher about to be run
+	 * @param index index of the CountItem being matched
+	 * @param deadline the System.nanoTime() it has to finish by
+	 */
+	void setDeadline(int index, long deadline)
+	{
+		this.index = index;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Release the text
+	 */
+	void clear()
+	{
+		text = null;
+	}
+
+	@Override
+	public int length()
+	{
+		return text.length();
+	}
+
+	@Override
+	public char charAt(int index)
+	{
+		if (--countdown == 0)
+		{
+			countdown = CHECK_INTERVAL;
+			check();
+		}
+		return text.charAt(index);
+	}
+
+	private void check()
+	{
+		if (Thread.currentThread().isInterrupted()) {
+			throw new CancellationException("Interrupted matching the text");
+		}
+		if (System.nanoTime() - deadline > 0) {
+			throw new MatchTimeoutException(index);
+		}
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end)
+	{
+		return text.subSequence(start, end);
+	}
+
+	@Override
+	public String toString()
+	{
+		return text.toString();
+	}
+}
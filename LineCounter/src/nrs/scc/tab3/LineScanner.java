@@ -0,0 +1,296 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.util.Arrays;
+
+/**
+ * Single pass scanner that counts the total and blank lines of a piece of text.
+ * Replaces the separate new line and blank line regular expressions so that
+ * each file only has to be walked once. A line is terminated by \n, \r\n or a bare \r.
+ * <p>
+ * The offset each line starts at is recorded as the text is scanned so that the line
+ * holding any offset can be found with a binary search rather than by counting line
+ * terminators again.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class LineScanner
+{
+	/**
+	 * Receives each run of consecutive blank lines found by the scanner
+	 */
+	interface BlankRunListener
+	{
+		/**
+		 * @param start offset of the first blank line in the run
+		 * @param end offset of the line terminator ending the run or the end of the text
+		 */
+		void blankRun(int start, int end);
+	}
+
+	private static final char LF = '\n';
+	private static final char CR = '\r';
+	private static final int INITIAL_LINES = 1024;
+
+	private int totalLines;
+	private int blankLines;
+	/** every char scanned OR'ed together */
+	private int charBits;
+
+	// state carried between calls when the text is scanned in pieces
+	private int lineStart;
+	private boolean blank;
+	private boolean pendingCR;
+	private int runStart;
+	private int runEnd;
+
+	// offsets of the lines started in the text scanned so far, reused across files
+	private int[] lineStarts = new int[INITIAL_LINES];
+	private int lineStartCount;
+	/** line number of the line holding the offsets before the first recorded line start */
+	private int baseLine;
+
+	/**
+	 * Scan the whole of the text counting the lines. Blank runs are reported in the same way
+	 * that the ^\s*$ multi-line pattern used to match them so that the counted lines
+	 * don't change.
+	 * @param text the text to scan
+	 * @param listener receives blank runs; may be null if blank lines aren't being counted
+	 */
+	void scan(CharSequence text, BlankRunListener listener)
+	{
+		reset();
+		scan(text, 0, text.length(), true, listener);
+	}
+
+	/**
+	 * Start scanning a new piece of text
+	 */
+	void reset()
+	{
+		reset(0);
+	}
+
+	/**
+	 * Start scanning a new piece of text from a line start other than the beginning of
+	 * the text; lines are numbered from the one starting at the offset
+	 * @param start offset of the first line
+	 */
+	void reset(int start)
+	{
+		totalLines = 1; // last line has no terminator
+		blankLines = 0;
+		charBits = 0;
+		lineStart = start;
+		blank = true;
+		pendingCR = false;
+		runStart = runEnd = -1;
+		lineStartCount = 0;
+		baseLine = 0;
+	}
+
+	/**
+	 * Scan part of the text, carrying on from where the previous call finished
+	 * @param text the text to scan
+	 * @param from offset to start from
+	 * @param to offset to scan up to, exclusive
+	 * @param endOfInput true if there is no more text after to
+	 * @param listener receives blank runs; may be null
+	 */
+	void scan(CharSequence text, int from, int to, boolean endOfInput, BlankRunListener listener)
+	{
+		char c;
+		int bits = 0;
+		for (int i=from; i<to; i++)
+		{
+			c = text.charAt(i);
+			bits |= c;
+			if (pendingCR)
+			{
+				pendingCR = false;
+				if (c == LF)
+				{
+					lineStart = i+1; // \r\n is a single terminator
+					lineStarts[lineStartCount-1] = lineStart;
+					continue;
+				}
+			}
+
+			if (c == LF || c == CR)
+			{
+				if (blank)
+				{
+					if (runStart == -1) {
+						runStart = lineStart;
+					}
+					runEnd = i;
+					blankLines++;
+				}
+				else if (runStart != -1)
+				{
+					reportRun(listener);
+					runStart = -1;
+				}
+
+				pendingCR = (c == CR);
+				totalLines++;
+				lineStart = i+1;
+				blank = true;
+				if (lineStartCount == lineStarts.length) {
+					lineStarts = Arrays.copyOf(lineStarts, lineStartCount * 2);
+				}
+				lineStarts[lineStartCount++] = lineStart;
+			}
+			else if (blank && !isBlank(c))
+			{
+				blank = false;
+			}
+		}
+		charBits |= bits;
+
+		if (!endOfInput) {
+			return;
+		}
+
+		// the last line
+		if (lineStart == to)
+		{
+			// an empty last line is only a continuation of a preceding blank run
+			if (runStart != -1) {
+				runEnd = to;
+			}
+		}
+		else if (blank)
+		{
+			if (runStart == -1) {
+				runStart = lineStart;
+			}
+			runEnd = to;
+			blankLines++;
+		}
+
+		if (runStart != -1)
+		{
+			reportRun(listener);
+			runStart = -1;
+		}
+	}
+
+	/**
+	 * Report the complete lines of a blank run that is still open at the end of a piece
+	 * of text. The remainder of the run will be reported from the start of the next piece.
+	 * @param listener receives the blank run
+	 */
+	void reportOpenRun(BlankRunListener listener)
+	{
+		reportRun(listener);
+	}
+
+	/**
+	 * Move the offsets held between calls when the text is shifted to the left
+	 * @param offset number of chars the text has moved by
+	 * @param from offset the next call will start from; must be at least 1
+	 */
+	void shift(int offset, int from)
+	{
+		// drop the line starts that have been moved out of the text
+		int dropped = 0;
+		while (dropped < lineStartCount && lineStarts[dropped] <= offset) {
+			dropped++;
+		}
+		baseLine += dropped;
+		lineStartCount -= dropped;
+		for (int i=0; i<lineStartCount; i++) {
+			lineStarts[i] = lineStarts[i+dropped] - offset;
+		}
+
+		// a line that started before from is treated as starting at the char of context before it
+		lineStart = Math.max(lineStart - offset, from-1);
+		if (runStart != -1)
+		{
+			// the lines before the current one have already been reported by reportOpenRun
+			runStart = lineStart;
+			runEnd -= offset;
+		}
+	}
+
+	private void reportRun(BlankRunListener listener)
+	{
+		if (listener != null && runStart != -1 && runEnd >= runStart) {
+			listener.blankRun(runStart, runEnd);
+		}
+	}
+
+	/**
+	 * Find the line holding an offset of the text scanned so far. A \r\n pair belongs
+	 * to the line it terminates.
+	 * @param offset offset that has been scanned
+	 * @return the line number, starting from 0 for the first line of the text
+	 */
+	int getLine(int offset)
+	{
+		// number of lines starting at or before the offset
+		int low = 0;
+		int high = lineStartCount;
+		int mid;
+		while (low < high)
+		{
+			mid = (low + high) >>> 1;
+			if (lineStarts[mid] <= offset) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		return baseLine + low;
+	}
+
+	/**
+	 * Blank characters as matched by \s, excluding line terminators
+	 */
+	private static boolean isBlank(char c)
+	{
+		return c == ' ' || c == '\t' || c == '\u000B' || c == '\f';
+	}
+
+	/**
+	 * @return number of lines found by the last scan
+	 */
+	int getTotalLines()
+	{
+		return totalLines;
+	}
+
+	/**
+	 * @return true if all the chars scanned since the last reset were ASCII
+	 */
+	boolean isAscii()
+	{
+		return (charBits & ~0x7F) == 0;
+	}
+
+	/**
+	 * @return number of blank lines found by the last scan
+	 */
+	int getBlankLines()
+	{
+		return blankLines;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Line totals of each file type that can be read while the files are still being counted,
+ * so the summary table can show the totals so far.
+ * <p>
+ * Each FileCounter adds to a {@link Stripe} of its own. Only that FileCounter writes to
+ * the stripe, so adding a file is a few ordered writes with no locking or compare and set.
+ * Taking a snapshot reads and adds up every stripe without stopping the FileCounters; the
+ * totals of a file may be part way through being added, which the next snapshot corrects.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class LiveTotals
+{
+	/**
+	 * The totals added by a single FileCounter
+	 */
+	static final class Stripe
+	{
+		/** totals[fileType * KINDS + kind]; replaced by a larger copy when a new file type is seen */
+		private volatile AtomicLongArray totals = new AtomicLongArray(16 * SummaryDetails.KINDS);
+
+		/**
+		 * Add the line totals of a file; must only be called by the FileCounter owning the stripe
+		 * @param fileType number of the file type, from {@link FileTypeIds}
+		 * @param totalLines
+		 * @param blankLines
+		 * @param countedLines
+		 * @param sourceLines
+		 */
+		void addLines(int fileType, long totalLines, long blankLines, long countedLines, long sourceLines)
+		{
+			int base = fileType * SummaryDetails.KINDS;
+			AtomicLongArray t = totals;
+			if (base + SummaryDetails.KINDS > t.length()) {
+				t = grow(t, base + SummaryDetails.KINDS);
+			}
+			add(t, base + SummaryDetails.TOTAL_LINES, totalLines);
+			add(t, base + SummaryDetails.BLANK_LINES, blankLines);
+			add(t, base + SummaryDetails.COUNTED_LINES, countedLines);
+			add(t, base + SummaryDetails.SOURCE_LINES, sourceLines);
+		}
+
+		/**
+		 * There is only one writer so the total can't change between the get and the set
+		 */
+		private static void add(AtomicLongArray t, int index, long value)
+		{
+			if (value != 0) {
+				t.lazySet(index, t.get(index) + value);
+			}
+		}
+
+		private AtomicLongArray grow(AtomicLongArray t, int size)
+		{
+			AtomicLongArray larger = new AtomicLongArray(Math.max(t.length() * 2, size));
+			for (int i=0; i<t.length(); i++) {
+				larger.set(i, t.get(i));
+			}
+			totals = larger;
+			return larger;
+		}
+	}
+
+	private final FileTypeIds fileTypeIds;
+	private final List<Stripe> stripes = new CopyOnWriteArrayList<Stripe>();
+
+	/**
+	 * @param fileTypeIds numbers the file types; shared with the SummaryDetails of the count
+	 */
+	LiveTotals(FileTypeIds fileTypeIds)
+	{
+		this.fileTypeIds = fileTypeIds;
+	}
+
+	/**
+	 * @return a new stripe for a FileCounter to add its totals to
+	 */
+	Stripe newStripe()
+	{
+		Stripe stripe = new Stripe();
+		stripes.add(stripe);
+		return stripe;
+	}
+
+	/**
+	 * Add up the totals of every stripe without stopping the FileCounters
+	 * @return the line totals so far; holds no skipped or duplicate file totals
+	 */
+	SummaryDetails snapshot()
+	{
+		long[] sum = new long[0];
+		AtomicLongArray t;
+		for (Stripe stripe : stripes)
+		{
+			t = stripe.totals;
+			if (t.length() > sum.length) {
+				sum = Arrays.copyOf(sum, t.length());
+			}
+			for (int i=0; i<t.length(); i++) {
+				sum[i] += t.get(i);
+			}
+		}
+
+		SummaryDetails summary = new SummaryDetails(fileTypeIds);
+		for (int base=0; base<sum.length; base+=SummaryDetails.KINDS)
+		{
+			summary.addLines(base / SummaryDetails.KINDS, sum[base + SummaryDetails.TOTAL_LINES],
+				sum[base + SummaryDetails.BLANK_LINES], sum[base + SummaryDetails.COUNTED_LINES],
+				sum[base + SummaryDetails.SOURCE_LINES]);
+		}
+		return summary;
+	}
+}
@@ -0,0 +1,48 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+/**
+ * Thrown when matching a CountItem takes longer than the time allowed for a file
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class MatchTimeoutException extends RuntimeException
+{
+	private static final long serialVersionUID = 1L;
+
+	private final int index;
+
+	/**
+	 * @param index index of the CountItem, or CombinedMatcher.COMBINED for the combined alternation
+	 */
+	MatchTimeoutException(int index)
+	{
+		super("Matching timed out");
+		this.index = index;
+	}
+
+	/**
+	 * @return index of the CountItem, or CombinedMatcher.COMBINED for the combined alternation
+	 */
+	int getIndex()
+	{
+		return index;
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Files that have been opened and read ahead by the {@link FilePrefetcher}s, waiting
+ * for a FileCounter to count them.
+ * <p>
+ * The queue is bounded by the number of bytes read ahead as well as by the number of
+ * files, so a few large files can't fill memory and a mass of tiny ones can't use up
+ * file handles. A file larger than the byte budget is still let in once the queue is
+ * empty. The depth of the queue and the time each side spends waiting on the other are
+ * recorded to show which stage is holding the count up.
+ * <p>
+ * Once every FileCounter has finished, however it finished, the queue is closed so
+ * that FilePrefetchers waiting for room are released rather than waiting forever. The
+ * files that were still queued, or that are offered once it is closed, are kept so that
+ * they can be reported as skipped rather than going missing from the results.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class PrefetchQueue
+{
+	/**
+	 * A file that is ready to be counted
+	 */
+	static final class PrefetchedFile
+	{
+		final FileDetails details;
+		final FileChannel channel;
+		/** the contents, already loaded; null if the file is streamed or skipped */
+		final MappedByteBuffer mapped;
+		/** why the file is to be skipped, or null if it is to be counted */
+		final String skipReason;
+
+		PrefetchedFile(FileDetails details, FileChannel channel, MappedByteBuffer mapped, String skipReason)
+		{
+			this.details = details;
+			this.channel = channel;
+			this.mapped = mapped;
+			this.skipReason = skipReason;
+		}
+
+		/**
+		 * @return bytes held in memory for the file
+		 */
+		long getCost()
+		{
+			return (mapped == null ? 0 : mapped.capacity());
+		}
+	}
+
+	/** skip reason of the files read ahead that no FileCounter was left to count */
+	static final String NOT_COUNTED = "not counted";
+
+	private final LinkedList<PrefetchedFile> files = new LinkedList<PrefetchedFile>();
+	/** files dropped because the queue was closed */
+	private final List<FileDetails> dropped = new ArrayList<FileDetails>();
+	private final long maxBytes;
+	private final int maxFiles;
+	private long queuedBytes;
+	private int activePrefetchers;
+	private int activeCounters;
+	private boolean closed;
+	private final static Logger log = Logger.getLogger(PrefetchQueue.class.getName());
+
+	// metrics
+	private int maxDepth;
+	private long maxQueuedBytes;
+	private long prefetcherWaitTime;
+	private long counterWaitTime;
+
+	/**
+	 * @param maxBytes number of bytes that may be read ahead
+	 * @param maxFiles number of files that may be held open
+	 * @param prefetchers number of FilePrefetchers that will add files
+	 * @param counters number of FileCounters that will take files
+	 */
+	PrefetchQueue(long maxBytes, int maxFiles, int prefetchers, int counters)
+	{
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+		activePrefetchers = prefetchers;
+		activeCounters = counters;
+	}
+
+	/**
+	 * Add a file, waiting until there is room for it
+	 * @param file
+	 * @throws InterruptedException if the count is cancelled while waiting
+	 */
+	synchronized void put(PrefetchedFile file) throws InterruptedException
+	{
+		long cost = file.getCost();
+		if (!files.isEmpty() && (files.size() >= maxFiles || queuedBytes + cost > maxBytes))
+		{
+			long started = System.nanoTime();
+			try
+			{
+				while (!closed && !files.isEmpty() && (files.size() >= maxFiles || queuedBytes + cost > maxBytes)) {
+					wait();
+				}
+			}
+			finally
+			{
+				prefetcherWaitTime += System.nanoTime() - started;
+			}
+		}
+
+		if (closed)
+		{
+			close(file);
+			dropped.add(file.details);
+			return;
+		}
+		files.add(file);
+		queuedBytes += cost;
+		maxDepth = Math.max(maxDepth, files.size());
+		maxQueuedBytes = Math.max(maxQueuedBytes, queuedBytes);
+		notifyAll();
+	}
+
+	/**
+	 * Take the next file to count, waiting for one to be read if necessary
+	 * @return the file, or null once every FilePrefetcher has finished and the queue is empty
+	 * @throws InterruptedException if the count is cancelled while waiting
+	 */
+	synchronized PrefetchedFile take() throws InterruptedException
+	{
+		if (files.isEmpty() && activePrefetchers > 0)
+		{
+			long started = System.nanoTime();
+			try
+			{
+				while (files.isEmpty() && activePrefetchers > 0 && !closed) {
+					wait();
+				}
+			}
+			finally
+			{
+				counterWaitTime += System.nanoTime() - started;
+			}
+		}
+
+		if (files.isEmpty()) {
+			return null;
+		}
+		PrefetchedFile file = files.removeFirst();
+		queuedBytes -= file.getCost();
+		notifyAll();
+		return file;
+	}
+
+	/**
+	 * A FilePrefetcher has run out of files to read
+	 */
+	synchronized void prefetcherFinished()
+	{
+		activePrefetchers--;
+		notifyAll();
+	}
+
+	/**
+	 * A FileCounter has stopped taking files, either because there are none left or
+	 * because it failed. The queue is closed when the last one stops.
+	 */
+	synchronized void counterFinished()
+	{
+		if (--activeCounters == 0) {
+			close();
+		}
+	}
+
+	/**
+	 * @return true once the queue has stopped accepting files
+	 */
+	synchronized boolean isClosed()
+	{
+		return closed;
+	}
+
+	/**
+	 * Record a file that wasn't read because the queue had already been closed
+	 * @param details
+	 */
+	synchronized void drop(FileDetails details)
+	{
+		dropped.add(details);
+	}
+
+	/**
+	 * Take the files dropped because the queue was closed
+	 * @return the files, which are no longer held by the queue
+	 */
+	synchronized List<FileDetails> takeDroppedFiles()
+	{
+		List<FileDetails> taken = new ArrayList<FileDetails>(dropped);
+		dropped.clear();
+		return taken;
+	}
+
+	/**
+	 * Stop accepting files and close any that haven't been counted
+	 */
+	synchronized void close()
+	{
+		closed = true;
+		for (PrefetchedFile file : files)
+		{
+			close(file);
+			dropped.add(file.details);
+		}
+		files.clear();
+		queuedBytes = 0;
+		notifyAll();
+	}
+
+	private static void close(PrefetchedFile file)
+	{
+		try {
+			file.channel.close();
+		} catch (IOException ioe) {
+			log.log(Level.FINE, "Cannot close "+file.details.getPath(), ioe);
+		}
+	}
+
+	/**
+	 * Get how full the queue got and how long each stage waited for the other
+	 * @return the most files and megabytes queued at once, then the seconds the FilePrefetchers
+	 * waited for room and the seconds the FileCounters waited for files
+	 */
+	synchronized Object[] getMetrics()
+	{
+		return new Object[] {maxDepth, maxQueuedBytes / (1024.0 * 1024), prefetcherWaitTime / 1e9, counterWaitTime / 1e9};
+	}
+}
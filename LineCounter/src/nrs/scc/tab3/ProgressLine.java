@@ -0,0 +1,128 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package nrs.scc.tab3;
+
+import java.io.Console;
+
+/**
+ * Shows the progress of a count on the console the application was started from, as a
+ * single line with a bar that is redrawn in place, so a count can be followed without
+ * the GUI. Driven by the same {@link ProgressModel} as the progress bar.
+ * <p>
+ * Has no Swing dependencies. Not thread safe; drawn from a single thread.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class ProgressLine
+{
+	private static final int BAR_WIDTH = 20;
+	private static final double MB = 1024 * 1024;
+
+	private final Console console;
+	/** format of the text after the bar, see {@link #format(ProgressModel)} */
+	private final String format;
+	/** length of the line last drawn, so a shorter one can blank out the rest of it */
+	private int drawnLength;
+
+	/**
+	 * @param console where the line is drawn
+	 * @param format format of the text after the bar, given the percentage done, the files
+	 * done and the total files, the MB done and the total MB, the MB/s and the time left
+	 */
+	ProgressLine(Console console, String format)
+	{
+		this.console = console;
+		this.format = format;
+	}
+
+	/**
+	 * @return a line for the console the application was started from, or null if it wasn't
+	 * started from one
+	 */
+	static ProgressLine forConsole(String format)
+	{
+		Console console = System.console();
+		return (console == null ? null : new ProgressLine(console, format));
+	}
+
+	/**
+	 * Format the progress as a line of text
+	 * @param progress
+	 * @return the line, without a line separator
+	 */
+	String format(ProgressModel progress)
+	{
+		float done = progress.getProgress();
+		int filled = (int)(done * BAR_WIDTH);
+		StringBuilder sb = new StringBuilder(100);
+		sb.append('[');
+		for (int i=0; i<BAR_WIDTH; i++) {
+			sb.append(i < filled ? '#' : '.');
+		}
+		sb.append("] ");
+		sb.append(String.format(format, (int)(done * 100), progress.getFilesDone(), progress.getTotalFiles(),
+			progress.getBytesDone() / MB, progress.getTotalBytes() / MB, progress.getBytesPerSecond() / MB,
+			formatTime(progress.getEta())));
+		return sb.toString();
+	}
+
+	/**
+	 * @param seconds seconds left, or -1 if not known
+	 * @return the time as minutes and seconds, or hours, minutes and seconds
+	 */
+	static String formatTime(int seconds)
+	{
+		if (seconds < 0) {
+			return "--:--";
+		}
+		if (seconds < 3600) {
+			return String.format("%d:%02d", seconds / 60, seconds % 60);
+		}
+		return String.format("%d:%02d:%02d", seconds / 3600, (seconds / 60) % 60, seconds % 60);
+	}
+
+	/**
+	 * Redraw the line over the one drawn before
+	 * @param progress
+	 */
+	void draw(ProgressModel progress)
+	{
+		String line = format(progress);
+		StringBuilder sb = new StringBuilder(line.length() + 1);
+		sb.append('\r');
+		sb.append(line);
+		for (int i=line.length(); i<drawnLength; i++) {
+			sb.append(' ');
+		}
+		drawnLength = line.length();
+		console.writer().print(sb);
+		console.flush();
+	}
+
+	/**
+	 * Draw the line a last time and move on to the next line
+	 * @param progress
+	 */
+	void finish(ProgressModel progress)
+	{
+		draw(progress);
+		console.writer().println();
+		console.flush();
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates how far through a count is, and how long is left, from the sizes of the files
+ * rather than their number, so that a few large files among many small ones don't make the
+ * progress stall and the estimate swing.
+ * <p>
+ * The work of a file is its size plus {@link AdaptiveConcurrency#FILE_WEIGHT}, so that
+ * empty and tiny files still move the progress along. The estimated time left is the work
+ * left divided by the rate of work, smoothed over roughly the last RATE_PERIOD so that it
+ * follows changes in speed without jumping with every sample.
+ * <p>
+ * Has no Swing dependencies so it can drive a progress line without a GUI.
+ * Not thread safe; sampled from a single thread.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class ProgressModel
+{
+	/** the rate is averaged over about this many nanoseconds */
+	private static final long RATE_PERIOD = TimeUnit.SECONDS.toNanos(10);
+
+	private final int totalFiles;
+	private final long totalBytes;
+	private final double totalWork;
+	private final long started;
+
+	private int filesDone;
+	private long bytesDone;
+	private long lastSample;
+	private double lastWork;
+	/** work per nanosecond; negative until the first sample */
+	private double rate = -1;
+
+	/**
+	 * @param totalFiles number of files to count
+	 * @param totalBytes total size of the files
+	 * @param started System.nanoTime() the count started
+	 */
+	ProgressModel(int totalFiles, long totalBytes, long started)
+	{
+		this.totalFiles = totalFiles;
+		this.totalBytes = totalBytes;
+		this.totalWork = getWork(totalFiles, totalBytes);
+		this.started = started;
+		lastSample = started;
+	}
+
+	private static double getWork(int files, long bytes)
+	{
+		return bytes + (double)files * AdaptiveConcurrency.FILE_WEIGHT;
+	}
+
+	/**
+	 * Record the files dealt with so far
+	 * @param filesDone files counted, skipped or failed
+	 * @param bytesDone total size of those files
+	 * @param now System.nanoTime()
+	 */
+	void update(int filesDone, long bytesDone, long now)
+	{
+		this.filesDone = filesDone;
+		this.bytesDone = bytesDone;
+
+		long elapsed = now - lastSample;
+		if (elapsed <= 0) {
+			return;
+		}
+		double work = getWork(filesDone, bytesDone);
+		double sample = (work - lastWork) / elapsed;
+		if (rate < 0)
+		{
+			rate = sample;
+		}
+		else
+		{
+			// exponential average weighting the sample by how much of the period it covers
+			double weight = 1 - Math.exp(-(double)elapsed / RATE_PERIOD);
+			rate += (sample - rate) * weight;
+		}
+		lastSample = now;
+		lastWork = work;
+	}
+
+	/**
+	 * @return fraction of the work done, from 0 to 1
+	 */
+	float getProgress()
+	{
+		return (totalWork == 0 ? 1f : (float)Math.min(1, getWork(filesDone, bytesDone) / totalWork));
+	}
+
+	int getFilesDone()
+	{
+		return filesDone;
+	}
+
+	int getTotalFiles()
+	{
+		return totalFiles;
+	}
+
+	long getBytesDone()
+	{
+		return bytesDone;
+	}
+
+	long getTotalBytes()
+	{
+		return totalBytes;
+	}
+
+	/**
+	 * @return seconds since the count started, up to the last sample
+	 */
+	float getElapsedSeconds()
+	{
+		return (lastSample - started) / 1e9f;
+	}
+
+	/**
+	 * @return smoothed bytes counted per second
+	 */
+	double getBytesPerSecond()
+	{
+		if (rate <= 0) {
+			return 0;
+		}
+		double work = getWork(filesDone, bytesDone);
+		// take the file weights back out of the rate in proportion
+		return rate * 1e9 * (work == 0 ? 0 : bytesDone / work);
+	}
+
+	/**
+	 * @return estimated seconds until the count finishes, or -1 if nothing has been counted yet
+	 */
+	int getEta()
+	{
+		double left = totalWork - getWork(filesDone, bytesDone);
+		if (left <= 0) {
+			return 0;
+		}
+		double r = rate;
+		if (r <= 0 && lastSample > started) {
+			r = getWork(filesDone, bytesDone) / (lastSample - started); // nothing finished lately
+		}
+		if (r <= 0) {
+			return -1;
+		}
+		return (int)Math.min(Integer.MAX_VALUE, left / r / 1e9);
+	}
+}
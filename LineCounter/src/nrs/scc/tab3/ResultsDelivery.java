@@ -0,0 +1,141 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import javax.swing.Timer;
+
+/**
+ * Passes the FileDetails counted by the FileCounters to the {@link ResultsTableModel}.
+ * <p>
+ * The FileCounters add batches of results to a concurrent queue without locking. A Swing
+ * Timer drains the queue on the event dispatch thread and adds everything waiting to the
+ * table in one insert, so however fast the files are counted there is at most one row
+ * insert event, and one re-sort of the table, per tick.
+ * <p>
+ * The interval between ticks follows how busy the event dispatch thread is. It is kept to
+ * EDT_SHARE times the time an insert takes, so the inserts use a fixed share of the thread,
+ * plus however late the ticks have been running, so that a thread falling behind with
+ * painting isn't given more events.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class ResultsDelivery implements ActionListener
+{
+	/** milliseconds between ticks */
+	private static final int MIN_DELAY = 50;
+	private static final int MAX_DELAY = 1000;
+	/** a tick waits this many times as long as the last inserts took */
+	private static final int EDT_SHARE = 5;
+
+	private final ResultsTableModel rtm;
+	private final Queue<List<FileDetails>> pending = new ConcurrentLinkedQueue<List<FileDetails>>();
+	private final Timer timer;
+	// smoothed over the last few ticks, in nanoseconds
+	private long insertTime;
+	private long lateness;
+	private long lastTick;
+	private final static Logger log = Logger.getLogger(ResultsDelivery.class.getName());
+
+	/**
+	 * Create on the event dispatch thread
+	 * @param rtm
+	 */
+	ResultsDelivery(ResultsTableModel rtm)
+	{
+		this.rtm = rtm;
+		timer = new Timer(MIN_DELAY, this);
+		timer.setCoalesce(true);
+	}
+
+	/**
+	 * Start adding the results to the table
+	 */
+	void start()
+	{
+		lastTick = System.nanoTime();
+		timer.start();
+	}
+
+	/**
+	 * Add a batch of results; may be called by any thread
+	 * @param detailsList the results, which must not be changed afterwards
+	 */
+	void add(List<FileDetails> detailsList)
+	{
+		pending.add(detailsList);
+	}
+
+	/**
+	 * Stop the timer and add any results still waiting; called on the event dispatch thread
+	 */
+	void finish()
+	{
+		timer.stop();
+		deliver();
+	}
+
+	@Override
+	public void actionPerformed(ActionEvent e)
+	{
+		if (!timer.isRunning()) {
+			return; // queued before finishing
+		}
+
+		long started = System.nanoTime();
+		long late = Math.max(0, started - lastTick - TimeUnit.MILLISECONDS.toNanos(timer.getDelay()));
+		deliver();
+		long finished = System.nanoTime();
+		lastTick = finished;
+
+		insertTime = (insertTime * 3 + (finished - started)) / 4;
+		lateness = (lateness * 3 + late) / 4;
+		int delay = (int)Math.min(MAX_DELAY, Math.max(MIN_DELAY, TimeUnit.NANOSECONDS.toMillis(insertTime * EDT_SHARE + lateness)));
+		if (Math.abs(delay - timer.getDelay()) > timer.getDelay() / 10)
+		{
+			log.finer("Results delivered every "+delay+" ms");
+			timer.setDelay(delay);
+		}
+	}
+
+	/**
+	 * Add everything waiting to the table in one go
+	 */
+	private void deliver()
+	{
+		List<FileDetails> batch = pending.poll();
+		if (batch == null) {
+			return;
+		}
+
+		List<FileDetails> rows = new ArrayList<FileDetails>(batch);
+		while ((batch = pending.poll()) != null) {
+			rows.addAll(batch);
+		}
+		rtm.addFileDetails(rows);
+	}
+}
@@ -19,9 +19,11 @@
 package nrs.scc.tab3;
 
 import java.awt.Frame;
+import java.text.MessageFormat;
 import java.util.Map;
 import javax.swing.JDialog;
 import javax.swing.table.DefaultTableModel;
+import nrs.scc.tab1.SizeColumnRenderer;
 import org.jdesktop.application.Application;
 import org.jdesktop.application.ResourceMap;
 
@@ -69,11 +71,13 @@ public class ResultsDialog extends JDialog
 	 * @param parent
 	 * @param filesCounted
 	 * @param timeTaken formatted time taken
-	 * @param threads
+	 * @param threads number of file counters active at the end of the count
 	 * @param msgsSec formatted msgs/sec
 	 * @param errors
+	 * @param summary totals of the files counted, skipped and found to be duplicates
 	 */
-	public ResultsDialog(Frame parent, int filesCounted, String timeTaken, int threads, String msgsSec, Map<String, String> errors)
+	public ResultsDialog(Frame parent, int filesCounted, String timeTaken, int threads, String msgsSec, Map<String, String> errors,
+		SummaryDetails summary)
 	{
 		this(parent);
 
@@ -81,6 +85,15 @@ public class ResultsDialog extends JDialog
 		threadsTF.setText(Integer.toString(threads));
 		timeTF.setText(timeTaken);
 		filesSecTF.setText(msgsSec);
+		ResourceMap resourceMap = Application.getInstance(nrs.scc.SourceCodeCounter.class).getContext().getResourceMap(ResultsDialog.class);
+		String bytes = resourceMap.getString("bytes");
+		String kb = resourceMap.getString("kb");
+		String mb = resourceMap.getString("mb");
+		skippedTF.setText(Integer.toString(summary.getSkippedFiles()));
+		skippedSizeTF.setText(SizeColumnRenderer.formatSize(summary.getSkippedBytes(), bytes, kb, mb));
+		duplicatesTF.setText(Integer.toString(summary.getDuplicateFiles()));
+		duplicateSizeTF.setText(SizeColumnRenderer.formatSize(summary.getDuplicateBytes(), bytes, kb, mb));
+		timeSavedTF.setText(MessageFormat.format("{0,number}s", summary.getDuplicateTimeSaved() / 1e9f));
 
 		if (!errors.isEmpty())
 		{
@@ -114,6 +127,16 @@ public class ResultsDialog extends JDialog
         threadsTF = new javax.swing.JTextField();
         filesSec = new javax.swing.JLabel();
         filesSecTF = new javax.swing.JTextField();
+        skippedLabel = new javax.swing.JLabel();
+        skippedTF = new javax.swing.JTextField();
+        skippedSizeLabel = new javax.swing.JLabel();
+        skippedSizeTF = new javax.swing.JTextField();
+        duplicatesLabel = new javax.swing.JLabel();
+        duplicatesTF = new javax.swing.JTextField();
+        duplicateSizeLabel = new javax.swing.JLabel();
+        duplicateSizeTF = new javax.swing.JTextField();
+        timeSavedLabel = new javax.swing.JLabel();
+        timeSavedTF = new javax.swing.JTextField();
         errorsScroll = new javax.swing.JScrollPane();
         errorsTable = new javax.swing.JTable();
 
@@ -178,6 +201,51 @@ public class ResultsDialog extends JDialog
         filesSecTF.setText(resourceMap.getString("filesSecTF.text")); // NOI18N
         filesSecTF.setName("filesSecTF"); // NOI18N
 
+        skippedLabel.setText(resourceMap.getString("skippedLabel.text")); // NOI18N
+        skippedLabel.setName("skippedLabel"); // NOI18N
+
+        skippedTF.setColumns(5);
+        skippedTF.setEditable(false);
+        skippedTF.setHorizontalAlignment(javax.swing.JTextField.CENTER);
+        skippedTF.setText(resourceMap.getString("skippedTF.text")); // NOI18N
+        skippedTF.setName("skippedTF"); // NOI18N
+
+        skippedSizeLabel.setText(resourceMap.getString("skippedSizeLabel.text")); // NOI18N
+        skippedSizeLabel.setName("skippedSizeLabel"); // NOI18N
+
+        skippedSizeTF.setColumns(8);
+        skippedSizeTF.setEditable(false);
+        skippedSizeTF.setHorizontalAlignment(javax.swing.JTextField.CENTER);
+        skippedSizeTF.setText(resourceMap.getString("skippedSizeTF.text")); // NOI18N
+        skippedSizeTF.setName("skippedSizeTF"); // NOI18N
+
+        duplicatesLabel.setText(resourceMap.getString("duplicatesLabel.text")); // NOI18N
+        duplicatesLabel.setName("duplicatesLabel"); // NOI18N
+
+        duplicatesTF.setColumns(5);
+        duplicatesTF.setEditable(false);
+        duplicatesTF.setHorizontalAlignment(javax.swing.JTextField.CENTER);
+        duplicatesTF.setText(resourceMap.getString("duplicatesTF.text")); // NOI18N
+        duplicatesTF.setName("duplicatesTF"); // NOI18N
+
+        duplicateSizeLabel.setText(resourceMap.getString("duplicateSizeLabel.text")); // NOI18N
+        duplicateSizeLabel.setName("duplicateSizeLabel"); // NOI18N
+
+        duplicateSizeTF.setColumns(8);
+        duplicateSizeTF.setEditable(false);
+        duplicateSizeTF.setHorizontalAlignment(javax.swing.JTextField.CENTER);
+        duplicateSizeTF.setText(resourceMap.getString("duplicateSizeTF.text")); // NOI18N
+        duplicateSizeTF.setName("duplicateSizeTF"); // NOI18N
+
+        timeSavedLabel.setText(resourceMap.getString("timeSavedLabel.text")); // NOI18N
+        timeSavedLabel.setName("timeSavedLabel"); // NOI18N
+
+        timeSavedTF.setColumns(5);
+        timeSavedTF.setEditable(false);
+        timeSavedTF.setHorizontalAlignment(javax.swing.JTextField.CENTER);
+        timeSavedTF.setText(resourceMap.getString("timeSavedTF.text")); // NOI18N
+        timeSavedTF.setName("timeSavedTF"); // NOI18N
+
         errorsScroll.setBorder(javax.swing.BorderFactory.createTitledBorder(null, resourceMap.getString("errorsScroll.border.title"), javax.swing.border.TitledBorder.DEFAULT_JUSTIFICATION, javax.swing.border.TitledBorder.TOP)); // NOI18N
         errorsScroll.setName("errorsScroll"); // NOI18N
 
@@ -197,19 +265,29 @@ public class ResultsDialog extends JDialog
                     .addGroup(layout.createSequentialGroup()
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(filesCountedLabel)
-                            .addComponent(threadsLabel))
+                            .addComponent(threadsLabel)
+                            .addComponent(skippedLabel)
+                            .addComponent(duplicatesLabel)
+                            .addComponent(timeSavedLabel))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(filesCountedTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                            .addComponent(threadsTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                            .addComponent(threadsTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(skippedTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(duplicatesTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(timeSavedTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                         .addGap(18, 18, 18)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                             .addComponent(filesSec)
-                            .addComponent(timeLabel))
+                            .addComponent(timeLabel)
+                            .addComponent(skippedSizeLabel)
+                            .addComponent(duplicateSizeLabel))
                         .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                         .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
                             .addComponent(filesSecTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
-                            .addComponent(timeTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
+                            .addComponent(timeTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(skippedSizeTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                            .addComponent(duplicateSizeTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)))
                     .addComponent(closeButton, javax.swing.GroupLayout.Alignment.TRAILING))
                 .addContainerGap())
         );
@@ -230,6 +308,22 @@ public class ResultsDialog extends JDialog
                     .addComponent(threadsTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
                     .addComponent(filesSec)
                     .addComponent(filesSecTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(skippedLabel)
+                    .addComponent(skippedTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(skippedSizeLabel)
+                    .addComponent(skippedSizeTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(duplicatesLabel)
+                    .addComponent(duplicatesTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
+                    .addComponent(duplicateSizeLabel)
+                    .addComponent(duplicateSizeTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+                    .addComponent(timeSavedLabel)
+                    .addComponent(timeSavedTF, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE))
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(errorsScroll, javax.swing.GroupLayout.PREFERRED_SIZE, 132, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addGap(18, 18, 18)
@@ -265,6 +359,10 @@ public class ResultsDialog extends JDialog
 
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JButton closeButton;
+    private javax.swing.JLabel duplicateSizeLabel;
+    private javax.swing.JTextField duplicateSizeTF;
+    private javax.swing.JLabel duplicatesLabel;
+    private javax.swing.JTextField duplicatesTF;
     private javax.swing.JScrollPane errorsScroll;
     private javax.swing.JTable errorsTable;
     private javax.swing.JLabel filesCountedLabel;
@@ -272,7 +370,13 @@ public class ResultsDialog extends JDialog
     private javax.swing.JLabel filesSec;
     private javax.swing.JTextField filesSecTF;
     private javax.swing.JLabel resultsLabel;
+    private javax.swing.JLabel skippedLabel;
+    private javax.swing.JLabel skippedSizeLabel;
+    private javax.swing.JTextField skippedSizeTF;
+    private javax.swing.JTextField skippedTF;
     private javax.swing.JLabel threadsLabel;
+    private javax.swing.JLabel timeSavedLabel;
+    private javax.swing.JTextField timeSavedTF;
     private javax.swing.JTextField threadsTF;
     private javax.swing.JLabel timeLabel;
     private javax.swing.JTextField timeTF;
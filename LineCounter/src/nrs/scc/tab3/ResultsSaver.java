@@ -55,12 +55,16 @@ public class ResultsSaver
 		writer.println(sb.toString());
 		
 		// write lines
+		Object value;
 		for (int row=0; row<tm.getRowCount(); row++)
 		{
 			sb.setLength(0);
 			for (col=0; col<colCount; col++)
 			{
-				sb.append(tm.getValueAt(row, col));
+				value = tm.getValueAt(row, col);
+				if (value != null) {
+					sb.append(value);
+				}
 				sb.append(COMMA);
 			}
 			sb.setLength(sb.length()-1);
@@ -30,7 +30,7 @@ import java.util.List;
 public class ResultsTableModel extends AbstractTableModel
 {
 	private String[] colNames;
-	private Class[] colTypes = {String.class, String.class, Integer.class, Integer.class, Integer.class, Integer.class};
+	private Class[] colTypes = {String.class, String.class, Integer.class, Integer.class, Integer.class, Integer.class, String.class, String.class};
 	private List<FileDetails> rows = new ArrayList<FileDetails>();
 
 	public ResultsTableModel(String[] colNames)
@@ -84,6 +84,8 @@ public class ResultsTableModel extends AbstractTableModel
 				case 3: return details.blankLines;
 				case 4: return details.countedLines;
 				case 5: return details.sourceLines;
+				case 6: return details.getDuplicateOf();
+				case 7: return details.getSkipReason();
 			}
 		}
 
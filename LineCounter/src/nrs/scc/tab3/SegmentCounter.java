@@ -0,0 +1,243 @@
+/*
+ *  SourceCodeCounter
+ *  Copyright (C) 2009 Nick Sydenham <nsydenham@yahoo.co.uk>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package nrs.scc.tab3;
+
+import java.util.BitSet;
+
+/**
+ * Counts one segment of a large file so that the segments can be counted at the same
+ * time on different threads. Segments start at the beginning of a line so the lines,
+ * blank lines and blank runs of each one can be found on their own.
+ * <p>
+ * CountItem matches can run on past the end of a segment, and a match that does so
+ * changes where find() carries on from in the next segment. Each segment is therefore
+ * first matched as if nothing ran into it and records where each CountItem would carry
+ * on from at its end. If the segment before it ends with a CountItem carrying on beyond
+ * its start, the segment is matched again from those offsets, so the matches are the same
+ * as counting the file in one go.
+ * <p>
+ * Lines are numbered from the first line of the segment; markLines() moves them to the
+ * lines of the file once the number of lines before the segment is known.
+ *
+ * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
+ */
+final class SegmentCounter implements LineScanner.BlankRunListener, CombinedMatcher.MatchListener
+{
+	/**
+	 * Told how much of the segment has been scanned or matched, so the progress can move
+	 * while a large file is counted
+	 */
+	interface ProgressListener
+	{
+		/**
+		 * @param chars chars of the segment dealt with since the last call
+		 */
+		void progress(int chars);
+	}
+
+	/** chars scanned or matched between calls to the ProgressListener */
+	private static final int PROGRESS_STEP = 1024 * 1024;
+
+	private final CharSequence text;
+	/** offset of the first char, always at the start of a line */
+	private final int start;
+	/** offset after the last char, always at the start of a line or the end of the text */
+	private final int end;
+	private final boolean last;
+	private final LineScanner lineScanner = new LineScanner();
+	/** lines holding blank runs */
+	private final BitSet blankRunLines = new BitSet();
+	/** lines holding CountItem matches */
+	private final BitSet matchedLines = new BitSet();
+	/** end of the furthest match running on past the segment, or -1 */
+	private int overflowEnd = -1;
+	private CombinedMatcher matcher;
+	private int[] nextStarts;
+
+	/**
+	 * @param text the text of the whole file
+	 * @param start offset of the first line of the segment
+	 * @param end offset of the line after the segment, or the length of the text for the last one
+	 */
+	SegmentCounter(CharSequence text, int start, int end)
+	{
+		this.text = text;
+		this.start = start;
+		this.end = end;
+		last = (end == text.length());
+	}
+
+	/**
+	 * Count the lines and blank lines of the segment
+	 * @param markBlankRuns true if the lines of blank runs are counted as matched
+	 * @param progress told as the lines are scanned; may be null
+	 */
+	void scanLines(boolean markBlankRuns, ProgressListener progress)
+	{
+		LineScanner.BlankRunListener listener = (markBlankRuns ? this : null);
+		lineScanner.reset(start);
+		int from = start;
+		int to;
+		do
+		{
+			to = Math.min(end, from + PROGRESS_STEP);
+			lineScanner.scan(text, from, to, last && to == end, listener);
+			if (progress != null) {
+				progress.progress(to - from);
+			}
+			from = to;
+		}
+		while (to < end);
+		if (!last) {
+			lineScanner.reportOpenRun(listener);
+		}
+	}
+
+	/**
+	 * Find the CountItem matches starting in the segment
+	 * @param pattern the CountItems to match
+	 * @param timeLimit nanoseconds each CountItem may spend matching the segment
+	 * @param carryOn where each CountItem carries on from at the end of the segment before,
+	 * or null to match as if no match runs into the segment
+	 * @param progress told as the segment is matched; may be null
+	 * @throws MatchTimeoutException if a CountItem runs over its time limit
+	 */
+	void findMatches(CombinedPattern pattern, long timeLimit, int[] carryOn, ProgressListener progress)
+	{
+		if (matcher == null) {
+			matcher = pattern.matcher();
+		}
+		matcher.startFile(timeLimit);
+		if (carryOn == null) {
+			matcher.reset();
+		} else {
+			matcher.reset(carryOn);
+		}
+
+		matchedLines.clear();
+		overflowEnd = -1;
+		// the matcher carries on from one step to the next as it does from one window to the next
+		int from = start;
+		int to;
+		do
+		{
+			to = Math.min(end, from + PROGRESS_STEP);
+			matcher.find(text, from, (to == end && last ? text.length()+1 : to), this);
+			if (progress != null) {
+				progress.progress(to - from);
+			}
+			from = to;
+		}
+		while (to < end);
+		nextStarts = matcher.getNextStarts();
+	}
+
+	/**
+	 * @return where each CountItem carries on from at the end of the segment
+	 */
+	int[] getNextStarts()
+	{
+		return nextStarts;
+	}
+
+	/**
+	 * @param carryOn where each CountItem carries on from at the end of the segment before
+	 * @return true if a match in the segment before runs on past the start of this one
+	 */
+	boolean isOverlappedBy(int[] carryOn)
+	{
+		for (int i=0; i<carryOn.length; i++)
+		{
+			if (carryOn[i] > start) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public void blankRun(int runStart, int runEnd)
+	{
+		blankRunLines.set(lineScanner.getLine(runStart), lineScanner.getLine(runEnd) + 1);
+	}
+
+	@Override
+	public void match(int matchStart, int matchEnd)
+	{
+		if (matchEnd > end)
+		{
+			// the lines after the segment are marked once their numbers are known
+			overflowEnd = Math.max(overflowEnd, matchEnd);
+			matchEnd = end;
+		}
+		matchedLines.set(lineScanner.getLine(matchStart), lineScanner.getLine(matchEnd) + 1);
+	}
+
+	/**
+	 * Mark the lines of the file holding the blank runs and matches of the segment
+	 * @param lines the lines of the file
+	 * @param firstLine line number of the first line of the segment
+	 * @param segments every segment of the file, in order
+	 * @param firstLines line number of the first line of each segment
+	 */
+	void markLines(BitSet lines, int firstLine, SegmentCounter[] segments, int[] firstLines)
+	{
+		for (int i=blankRunLines.nextSetBit(0); i>=0; i=blankRunLines.nextSetBit(i+1)) {
+			lines.set(firstLine + i);
+		}
+		for (int i=matchedLines.nextSetBit(0); i>=0; i=matchedLines.nextSetBit(i+1)) {
+			lines.set(firstLine + i);
+		}
+
+		if (overflowEnd != -1)
+		{
+			int s = segments.length - 1;
+			while (segments[s].start > overflowEnd) {
+				s--;
+			}
+			lines.set(firstLine + getLineCount(), firstLines[s] + segments[s].lineScanner.getLine(overflowEnd) + 1);
+		}
+	}
+
+	/**
+	 * @return number of lines in the segment
+	 */
+	int getLineCount()
+	{
+		// every line but the last line of the file is terminated within its segment
+		return (last ? lineScanner.getTotalLines() : lineScanner.getTotalLines() - 1);
+	}
+
+	/**
+	 * @return number of blank lines in the segment
+	 */
+	int getBlankLines()
+	{
+		return lineScanner.getBlankLines();
+	}
+
+	/**
+	 * @return true if all the chars of the segment are ASCII
+	 */
+	boolean isAscii()
+	{
+		return lineScanner.isAscii();
+	}
+}
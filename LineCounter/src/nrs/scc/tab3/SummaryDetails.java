@@ -18,47 +18,68 @@
 
 package nrs.scc.tab3;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Summary details of applying the counters
+ * <p>
+ * The line totals of each file type are kept in a single array of longs indexed by the
+ * number given to the file type by {@link FileTypeIds} and the kind of total, so adding
+ * a file is a few array increments. Each FileCounter keeps its own SummaryDetails, which
+ * are added together once the count has finished.
  *
  * @author Copyright 2009 Nick Sydenham &lt;nsydenham@yahoo.co.uk&gt;
  */
 public class SummaryDetails
 {
-	private Map<String, Map<String, Integer>> summary = new HashMap<String, Map<String, Integer>>();
-	private int totalLines;
-	private int totalBlankLines;
-	private int totalCountedLines;
-	private int totalSourceLines;
+	// the kinds of line total kept for each file type
+	public static final int TOTAL_LINES = 0;
+	public static final int BLANK_LINES = 1;
+	public static final int COUNTED_LINES = 2;
+	public static final int SOURCE_LINES = 3;
+	public static final int KINDS = 4;
+
+	private final FileTypeIds fileTypeIds;
+	/** totals[fileType * KINDS + kind] */
+	private long[] totals = new long[16 * KINDS];
+	/** the same totals over all file types */
+	private final long[] grandTotals = new long[KINDS];
+	private int skippedFiles;
+	private long skippedBytes;
+	private int duplicateFiles;
+	private long duplicateBytes;
+	private long duplicateTimeSaved;
 
 	/**
-	 * Add a count for the specified file type
-	 * @param fileType name of tile type, e.g. java
-	 * @param counter e.g. Comment
-	 * @param increment the amount to increment by
+	 * @param fileTypeIds numbers the file types; shared by all the SummaryDetails of a count
 	 */
-	public void addCount(String fileType, String counter, int increment)
+	SummaryDetails(FileTypeIds fileTypeIds)
 	{
-		if (increment == 0) {
-			return;
-		}
-		
-		Map<String, Integer> counterMap = summary.get(fileType);
-		if (counterMap == null)
-		{
-			counterMap = new HashMap<String, Integer>();
-			summary.put(fileType, counterMap);
-		}
-		
-		Integer total = counterMap.get(counter);
-		if (total == null) {
-			total = 0;
+		this.fileTypeIds = fileTypeIds;
+	}
+
+	/**
+	 * Add the line totals of a file
+	 * @param fileType number of the file type, from {@link FileTypeIds}
+	 * @param totalLines
+	 * @param blankLines
+	 * @param countedLines
+	 * @param sourceLines
+	 */
+	void addLines(int fileType, long totalLines, long blankLines, long countedLines, long sourceLines)
+	{
+		int base = fileType * KINDS;
+		if (base >= totals.length) {
+			totals = Arrays.copyOf(totals, Math.max(totals.length * 2, base + KINDS));
 		}
-		total += increment;
-		counterMap.put(counter, total);
+		totals[base + TOTAL_LINES] += totalLines;
+		totals[base + BLANK_LINES] += blankLines;
+		totals[base + COUNTED_LINES] += countedLines;
+		totals[base + SOURCE_LINES] += sourceLines;
+		grandTotals[TOTAL_LINES] += totalLines;
+		grandTotals[BLANK_LINES] += blankLines;
+		grandTotals[COUNTED_LINES] += countedLines;
+		grandTotals[SOURCE_LINES] += sourceLines;
 	}
 
 	/**
@@ -69,59 +90,117 @@ public class SummaryDetails
 	{
 		assert details != null : "SummaryDetails cannot be null";
 		
-		totalLines += details.getTotalLines();
-		totalBlankLines += details.getTotalBlankLines();
-		totalCountedLines += details.getTotalCountedLines();
-		totalSourceLines += details.getTotalSourceLines();
-
-		for (String fileType : details.getSummaryTotals().keySet())
-		{
-			summary.put(fileType, details.getSummaryTotals().get(fileType));
+		if (details.totals.length > totals.length) {
+			totals = Arrays.copyOf(totals, details.totals.length);
+		}
+		for (int i=0; i<details.totals.length; i++) {
+			totals[i] += details.totals[i];
 		}
+		for (int i=0; i<KINDS; i++) {
+			grandTotals[i] += details.grandTotals[i];
+		}
+		skippedFiles += details.getSkippedFiles();
+		skippedBytes += details.getSkippedBytes();
+		duplicateFiles += details.getDuplicateFiles();
+		duplicateBytes += details.getDuplicateBytes();
+		duplicateTimeSaved += details.getDuplicateTimeSaved();
 	}
 
-	public void incrementTotalLines(int increment)
+	/**
+	 * Record a file that wasn't counted because it is binary or generated
+	 * @param size size of the file in bytes
+	 */
+	public void incrementSkippedFiles(long size)
 	{
-		totalLines += increment;
+		skippedFiles++;
+		skippedBytes += size;
 	}
-	
-	public void incrementBlankLines(int increment)
+
+	/**
+	 * Record a file whose totals were copied from an identical file
+	 * @param size size of the file in bytes
+	 * @param timeSaved nanoseconds it took to count the identical file
+	 */
+	public void incrementDuplicateFiles(long size, long timeSaved)
 	{
-		totalBlankLines += increment;
+		duplicateFiles++;
+		duplicateBytes += size;
+		duplicateTimeSaved += timeSaved;
 	}
-	
-	public void incrementCountedLines(int increment)
+
+	/**
+	 * @return number of file types that may have totals
+	 */
+	public int getFileTypeCount()
 	{
-		totalCountedLines += increment;
+		return fileTypeIds.size();
 	}
-	
-	public void incrementSourceLines(int increment)
+
+	/**
+	 * @param fileType number of the file type
+	 * @return the name of the file type
+	 */
+	public String getFileTypeName(int fileType)
 	{
-		totalSourceLines += increment;
+		return fileTypeIds.getName(fileType);
 	}
-	
-	public Map<String, Map<String, Integer>> getSummaryTotals()
+
+	/**
+	 * @param fileType number of the file type
+	 * @param kind TOTAL_LINES, BLANK_LINES, COUNTED_LINES or SOURCE_LINES
+	 * @return the total of that kind for the file type
+	 */
+	public long getTotal(int fileType, int kind)
 	{
-		return summary;
+		int index = fileType * KINDS + kind;
+		return (index < totals.length ? totals[index] : 0);
 	}
 
-	public int getTotalLines()
+	public long getTotalLines()
 	{
-		return totalLines;
+		return grandTotals[TOTAL_LINES];
 	}
 
-	public int getTotalBlankLines()
+	public long getTotalBlankLines()
 	{
-		return totalBlankLines;
+		return grandTotals[BLANK_LINES];
 	}
 
-	public int getTotalCountedLines()
+	public long getTotalCountedLines()
 	{
-		return totalCountedLines;
+		return grandTotals[COUNTED_LINES];
 	}
 
-	public int getTotalSourceLines()
+	public long getTotalSourceLines()
+	{
+		return grandTotals[SOURCE_LINES];
+	}
+
+	public int getSkippedFiles()
+	{
+		return skippedFiles;
+	}
+
+	public long getSkippedBytes()
+	{
+		return skippedBytes;
+	}
+
+	public int getDuplicateFiles()
+	{
+		return duplicateFiles;
+	}
+
+	public long getDuplicateBytes()
+	{
+		return duplicateBytes;
+	}
+
+	/**
+	 * @return nanoseconds that counting the duplicate files would have taken
+	 */
+	public long getDuplicateTimeSaved()
 	{
-		return totalSourceLines;
+		return duplicateTimeSaved;
 	}
 }
@@ -21,6 +21,7 @@ package nrs.scc.tab3;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 import javax.swing.table.TableModel;
@@ -39,6 +40,10 @@ public class SummaryResultsTableModel implements TableModel
 	private String[] colNames;
 	private List<TableModelListener> listeners = new ArrayList<TableModelListener>();
 	private List<List<Object>> rows = new ArrayList<List<Object>>();
+	/** the order the totals of each file type are listed in */
+	private static final int[] KINDS = {SummaryDetails.BLANK_LINES, SummaryDetails.COUNTED_LINES,
+		SummaryDetails.SOURCE_LINES, SummaryDetails.TOTAL_LINES};
+	private static final String[] KIND_KEYS = {"blank.lines", "counted.lines", "rem.lines", "total.lines"};
 
 	public SummaryResultsTableModel(String[] colNames)
 	{
@@ -53,7 +58,7 @@ public class SummaryResultsTableModel implements TableModel
 		}
 	}
 
-	private List<Object> getGrandTotalRow(String grandTotal, String counter, int total)
+	private List<Object> getGrandTotalRow(String grandTotal, String counter, long total)
 	{
 		List<Object> row = new ArrayList<Object>(3);
 		row.add(grandTotal);
@@ -63,40 +68,103 @@ public class SummaryResultsTableModel implements TableModel
 	}
 
 	/**
-	 * Set the summary details
+	 * Set the summary details, replacing any shown. If the same file types and kinds of
+	 * total are already listed only the totals that have changed are updated, so the table
+	 * can be refreshed while counting without losing the selection.
 	 * @param summary
 	 */
 	public void setSummaryDetails(SummaryDetails summary)
 	{
-		Map<String, Map<String, Integer>> totals = summary.getSummaryTotals();
-		Map<String, Integer> typeTotal;
+		List<List<Object>> newRows = getRows(summary);
+		if (isSameRows(newRows))
+		{
+			int first = -1, last = -1;
+			for (int i=0; i<rows.size(); i++)
+			{
+				if (!rows.get(i).get(2).equals(newRows.get(i).get(2)))
+				{
+					rows.get(i).set(2, newRows.get(i).get(2));
+					if (first == -1) {
+						first = i;
+					}
+					last = i;
+				}
+			}
+			if (first != -1) {
+				notifyListeners(new TableModelEvent(this, first, last, 2, TableModelEvent.UPDATE));
+			}
+			return;
+		}
+
+		boolean wasEmpty = rows.isEmpty();
+		rows = newRows;
+		if (wasEmpty) {
+			notifyListeners(new TableModelEvent(this, 0, rows.size()-1, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT));
+		} else {
+			notifyListeners(new TableModelEvent(this));
+		}
+	}
+
+	/**
+	 * @return the rows listing the summary, file types in name order followed by the grand totals
+	 */
+	private List<List<Object>> getRows(SummaryDetails summary)
+	{
+		ResourceMap rMap = Application.getInstance(SourceCodeCounter.class).getContext().getResourceMap(SummaryResultsTableModel.class);
+		String[] kindNames = new String[KINDS.length];
+		for (int k=0; k<KINDS.length; k++) {
+			kindNames[k] = rMap.getString(KIND_KEYS[k]);
+		}
+
+		// list the file types by name
+		Map<String, Integer> fileTypes = new TreeMap<String, Integer>();
+		for (int i=0; i<summary.getFileTypeCount(); i++) {
+			fileTypes.put(summary.getFileTypeName(i), i);
+		}
+
+		List<List<Object>> newRows = new ArrayList<List<Object>>();
 		List<Object> row;
-		for (String type : totals.keySet())
+		long total;
+		for (Map.Entry<String, Integer> fileType : fileTypes.entrySet())
 		{
-			typeTotal = totals.get(type);
-			for (String counter : typeTotal.keySet())
+			for (int k=0; k<KINDS.length; k++)
 			{
+				total = summary.getTotal(fileType.getValue(), KINDS[k]);
+				if (total == 0) {
+					continue;
+				}
 				row = new ArrayList<Object>(3);
-				row.add(type);
-				row.add(counter);
-				row.add(typeTotal.get(counter));
-				rows.add(row);
+				row.add(fileType.getKey());
+				row.add(kindNames[k]);
+				row.add(total);
+				newRows.add(row);
 			}
 		}
 
 		// add grand totals
-		ResourceMap rMap = Application.getInstance(SourceCodeCounter.class).getContext().getResourceMap(SummaryResultsTableModel.class);
 		String gt = rMap.getString("grand.total");
-		rows.add(getGrandTotalRow(gt, rMap.getString("blank.lines"), summary.getTotalBlankLines()));
-		rows.add(getGrandTotalRow(gt, rMap.getString("counted.lines"), summary.getTotalCountedLines()));
-		rows.add(getGrandTotalRow(gt, rMap.getString("rem.lines"), summary.getTotalSourceLines()));
-		rows.add(getGrandTotalRow(gt, rMap.getString("total.lines"), summary.getTotalLines()));
+		newRows.add(getGrandTotalRow(gt, rMap.getString("blank.lines"), summary.getTotalBlankLines()));
+		newRows.add(getGrandTotalRow(gt, rMap.getString("counted.lines"), summary.getTotalCountedLines()));
+		newRows.add(getGrandTotalRow(gt, rMap.getString("rem.lines"), summary.getTotalSourceLines()));
+		newRows.add(getGrandTotalRow(gt, rMap.getString("total.lines"), summary.getTotalLines()));
+		return newRows;
+	}
 
-		if (!rows.isEmpty())
+	/**
+	 * @return true if the rows list the same file types and kinds of total as those shown
+	 */
+	private boolean isSameRows(List<List<Object>> newRows)
+	{
+		if (newRows.size() != rows.size()) {
+			return false;
+		}
+		for (int i=0; i<rows.size(); i++)
 		{
-			TableModelEvent e = new TableModelEvent(this, 0, rows.size()-1, TableModelEvent.ALL_COLUMNS, TableModelEvent.INSERT);
-			notifyListeners(e);
+			if (!rows.get(i).get(0).equals(newRows.get(i).get(0)) || !rows.get(i).get(1).equals(newRows.get(i).get(1))) {
+				return false;
+			}
 		}
+		return true;
 	}
 
 	@Override public String getColumnName(int column)
@@ -114,7 +182,7 @@ public class SummaryResultsTableModel implements TableModel
 				return String.class;
 				
 			case 2:
-				return Integer.class;
+				return Long.class;
 				
 			default:
 				return String.class;
@@ -174,8 +242,9 @@ public class SummaryResultsTableModel implements TableModel
 	{
 		if (!rows.isEmpty())
 		{
+			int size = rows.size();
 			rows.clear();
-			TableModelEvent tme = new TableModelEvent(this, 0, rows.size()-1, TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE);
+			TableModelEvent tme = new TableModelEvent(this, 0, size-1, TableModelEvent.ALL_COLUMNS, TableModelEvent.DELETE);
 			notifyListeners(tme);
 		}
 	}